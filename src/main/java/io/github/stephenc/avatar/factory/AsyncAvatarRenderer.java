@@ -0,0 +1,378 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders SVG avatars off the calling thread using a bounded executor, so that bursts of rendering work cannot starve
+ * (or be starved by) the threads that handle I/O.
+ * <p>
+ * Each avatar is snapshot when it is submitted, so the caller is free to keep modifying the {@link AvatarBuilder}
+ * afterwards. Individual renders beyond the capacity of the executor's queue are rejected rather than queued without
+ * limit, while subscriptions just slow down until capacity is available.
+ */
+public class AsyncAvatarRenderer implements AutoCloseable {
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+    @NonNull
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int maxInFlight;
+    /**
+     * The number of renders submitted by this renderer that have not yet completed.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * The number of renders submitted by this renderer that have completed, incremented before {@link #inFlight} is
+     * decremented.
+     */
+    private final AtomicLong released = new AtomicLong();
+    /**
+     * The subscriptions waiting for a render to complete before they can submit more.
+     */
+    private final Queue<RenderSubscription> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a renderer backed by its own fixed size pool of daemon threads.
+     *
+     * @param threads       the number of rendering threads.
+     * @param queueCapacity the maximum number of renders that can be waiting for a thread.
+     */
+    public AsyncAvatarRenderer(int threads, int queueCapacity) {
+        this(newExecutor(threads, queueCapacity), true, threads + queueCapacity);
+    }
+
+    /**
+     * Creates a renderer backed by the supplied executor. The executor remains owned by the caller and will not be
+     * shut down by {@link #close()}.
+     *
+     * @param executor    the executor to render on, this should be bounded.
+     * @param maxInFlight the maximum number of renders that a single subscription will have outstanding at any time.
+     */
+    public AsyncAvatarRenderer(@NonNull ExecutorService executor, int maxInFlight) {
+        this(executor, false, maxInFlight);
+    }
+
+    private AsyncAvatarRenderer(@NonNull ExecutorService executor, boolean ownsExecutor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.ownsExecutor = ownsExecutor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    private static ExecutorService newExecutor(int threads, int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        String prefix = "avatar-render-" + POOL_NUMBER.incrementAndGet() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Renders the avatar for the supplied name.
+     *
+     * @param name the name to seed the avatar from.
+     * @return the UTF-8 encoded SVG, or a future that fails with a {@link RejectedExecutionException} if the renderer
+     * is saturated.
+     */
+    @NonNull
+    public CompletableFuture<byte[]> renderAsync(@NonNull String name) {
+        return submit(() -> new AvatarBuilder(name));
+    }
+
+    /**
+     * Renders the supplied avatar as it is configured at the time of this call.
+     *
+     * @param builder the avatar.
+     * @return the UTF-8 encoded SVG, or a future that fails with a {@link RejectedExecutionException} if the renderer
+     * is saturated.
+     */
+    @NonNull
+    public CompletableFuture<byte[]> renderAsync(@NonNull AvatarBuilder builder) {
+        AvatarBuilder snapshot = new AvatarBuilder(builder);
+        return submit(() -> snapshot);
+    }
+
+    private CompletableFuture<byte[]> submit(Spec spec) {
+        try {
+            return execute(spec);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    private CompletableFuture<byte[]> execute(Spec spec) {
+        inFlight.incrementAndGet();
+        CompletableFuture<byte[]> render;
+        try {
+            render = CompletableFuture.supplyAsync(() -> AvatarRenderer.DEFAULT.renderBytes(spec.get()), executor);
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+        render.whenComplete((avatar, failure) -> released());
+        return render;
+    }
+
+    /**
+     * Gives every waiting subscription another chance to submit. A subscription that still cannot submit waits again,
+     * and the render that this one was waiting for has taken an executor thread, so a later completion will follow.
+     */
+    private void released() {
+        released.incrementAndGet();
+        inFlight.decrementAndGet();
+        for (int n = waiting.size(); n > 0; n--) {
+            RenderSubscription subscription = waiting.poll();
+            if (subscription == null) {
+                break;
+            }
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Renders the avatars for a stream of names, delivering them to the subscriber in order and only as fast as the
+     * subscriber {@link Subscription#request(long) requests} them. When the executor is saturated the subscription
+     * waits for renders to complete rather than failing.
+     *
+     * @param names      the names to seed the avatars from.
+     * @param subscriber the subscriber.
+     */
+    public void subscribeNames(@NonNull Iterator<String> names, @NonNull Subscriber subscriber) {
+        subscribeSpecs(new Iterator<Spec>() {
+            @Override
+            public boolean hasNext() {
+                return names.hasNext();
+            }
+
+            @Override
+            public Spec next() {
+                String name = names.next();
+                return () -> new AvatarBuilder(name);
+            }
+        }, subscriber);
+    }
+
+    /**
+     * Renders a stream of avatars, delivering them to the subscriber in order and only as fast as the subscriber
+     * {@link Subscription#request(long) requests} them. Each avatar is snapshot when it is taken from the iterator.
+     *
+     * @param builders   the avatars.
+     * @param subscriber the subscriber.
+     */
+    public void subscribe(@NonNull Iterator<? extends AvatarBuilder> builders, @NonNull Subscriber subscriber) {
+        subscribeSpecs(new Iterator<Spec>() {
+            @Override
+            public boolean hasNext() {
+                return builders.hasNext();
+            }
+
+            @Override
+            public Spec next() {
+                AvatarBuilder snapshot = new AvatarBuilder(builders.next());
+                return () -> snapshot;
+            }
+        }, subscriber);
+    }
+
+    private void subscribeSpecs(Iterator<Spec> specs, Subscriber subscriber) {
+        Objects.requireNonNull(subscriber);
+        RenderSubscription subscription = new RenderSubscription(specs, subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * Shuts down the rendering threads if this renderer created them.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Receives rendered avatars from {@link #subscribe(Iterator, Subscriber)}. Calls to a subscriber are never
+     * concurrent.
+     */
+    public interface Subscriber {
+        void onSubscribe(@NonNull Subscription subscription);
+
+        void onNext(@NonNull byte[] avatar);
+
+        void onError(@NonNull Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Controls the flow of avatars to a {@link Subscriber}.
+     */
+    public interface Subscription {
+        /**
+         * Adds demand for a further {@code n} avatars.
+         *
+         * @param n the additional number of avatars wanted, must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops rendering, renders already in progress are discarded.
+         */
+        void cancel();
+    }
+
+    private interface Spec {
+        AvatarBuilder get();
+    }
+
+    private final class RenderSubscription implements Subscription {
+        private final Iterator<Spec> specs;
+        private final Subscriber subscriber;
+        /**
+         * The spec taken from the iterator that the executor did not have capacity for.
+         */
+        private Spec next;
+        private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+
+        RenderSubscription(Iterator<Spec> specs, Subscriber subscriber) {
+            this.specs = specs;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done) {
+                    drainOnce();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (cancelled) {
+                done = true;
+                pending.clear();
+                return;
+            }
+            if (invalidRequest != null) {
+                fail(invalidRequest);
+                return;
+            }
+            long emitted = 0;
+            long demand = requested.get();
+            while (emitted < demand && !pending.isEmpty() && pending.peek().isDone()) {
+                byte[] avatar;
+                try {
+                    avatar = pending.poll().join();
+                } catch (CompletionException e) {
+                    fail(e.getCause() == null ? e : e.getCause());
+                    return;
+                }
+                subscriber.onNext(avatar);
+                emitted++;
+                if (cancelled) {
+                    done = true;
+                    pending.clear();
+                    return;
+                }
+            }
+            if (emitted > 0) {
+                demand = requested.addAndGet(-emitted);
+            }
+            try {
+                while (pending.size() < Math.min(demand, maxInFlight) && (next != null || specs.hasNext())) {
+                    if (next == null) {
+                        next = specs.next();
+                    }
+                    long attempt = released.get();
+                    CompletableFuture<byte[]> render;
+                    try {
+                        render = execute(next);
+                    } catch (RejectedExecutionException e) {
+                        waiting.add(this);
+                        boolean idle = inFlight.get() == 0;
+                        if (released.get() != attempt) {
+                            // a render completed since the attempt, possibly before we were waiting to be told
+                            continue;
+                        }
+                        if (idle || executor.isShutdown()) {
+                            // no render of ours will complete to wake us, the executor is shared and busy elsewhere
+                            fail(e);
+                        }
+                        return;
+                    }
+                    next = null;
+                    pending.add(render);
+                    render.whenComplete((avatar, failure) -> drain());
+                }
+                if (pending.isEmpty() && next == null && !specs.hasNext()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable failure) {
+            done = true;
+            pending.clear();
+            next = null;
+            subscriber.onError(failure);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocates avatars such that no two users are ever given the same avatar.
+ * <p>
+ * The allocator has a fixed number of slots, tracked with one bit each. Each slot maps to a distinct {@link AvatarIndex
+ * rank}: consecutive slots alternate between the head templates, and within a head template the slots are scattered
+ * across every possible avatar by multiplying by a stride that is coprime with the number of avatars, so neighbouring
+ * slots produce avatars that look nothing alike. A name picks its starting slot and takes the first free slot from
+ * there, so allocation and claiming are both constant time while the allocator is not close to full.
+ * <p>
+ * Avatars assigned by other means, such as the avatars that existing users were seeded with, can be
+ * {@link #claim(AvatarBuilder) claimed} so that they are never allocated. Most of these will not map to a slot, so they
+ * are recorded by rank in a separate compact set instead, which costs eight to sixteen bytes per avatar.
+ * <p>
+ * Allocators are thread-safe. Allocation is lock-free, claims of avatars that do not map to a slot take a lock.
+ */
+public final class AvatarAllocator {
+    private static final int MAGIC = 0x41564131;
+    /**
+     * Version 2 is followed by the ranks of the claimed avatars that do not map to a slot.
+     */
+    private static final int MAGIC_V2 = 0x41564132;
+    private static final AvatarBuilder.Head[] HEADS = AvatarBuilder.Head.values();
+    private static final long[] STRIDES = new long[HEADS.length];
+    private static final long[] INVERSE_STRIDES = new long[HEADS.length];
+
+    static {
+        BigInteger phi = new BigInteger("6180339887498948482");
+        BigInteger scale = BigInteger.TEN.pow(19);
+        for (AvatarBuilder.Head head : HEADS) {
+            BigInteger count = BigInteger.valueOf(AvatarIndex.count(head));
+            BigInteger stride = count.multiply(phi).divide(scale);
+            while (!stride.gcd(count).equals(BigInteger.ONE)) {
+                stride = stride.add(BigInteger.ONE);
+            }
+            STRIDES[head.ordinal()] = stride.longValueExact();
+            INVERSE_STRIDES[head.ordinal()] = stride.modInverse(count).longValueExact();
+        }
+    }
+
+    private final int capacity;
+    @NonNull
+    private final AtomicLongArray used;
+    @NonNull
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * The ranks of the claimed avatars that do not map to a slot.
+     */
+    @NonNull
+    private final RankSet claimed = new RankSet();
+
+    /**
+     * Creates an empty allocator.
+     *
+     * @param capacity the maximum number of avatars that can be allocated, this costs one bit per avatar.
+     */
+    public AvatarAllocator(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.used = new AtomicLongArray((int) ((capacity + 63L) >>> 6));
+        if ((capacity & 63) != 0) {
+            // the slots past the end of the last word can never be allocated
+            used.set(used.length() - 1, -1L << (capacity & 63));
+        }
+    }
+
+    /**
+     * Reads an allocator previously written by {@link #writeTo(OutputStream)}.
+     *
+     * @param in the stream to read from.
+     * @return the allocator.
+     * @throws IOException if the stream could not be read or was not written by a compatible allocator.
+     */
+    @NonNull
+    public static AvatarAllocator readFrom(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int magic = data.readInt();
+        if (magic != MAGIC && magic != MAGIC_V2) {
+            throw new IOException("Not an avatar allocator");
+        }
+        long count = data.readLong();
+        if (count != AvatarIndex.count()) {
+            throw new IOException("Allocator was written for " + count + " avatars but there are now "
+                    + AvatarIndex.count() + " avatars");
+        }
+        int capacity = data.readInt();
+        if (capacity < 1) {
+            throw new IOException("Invalid capacity: " + capacity);
+        }
+        AvatarAllocator allocator = new AvatarAllocator(capacity);
+        long tail = allocator.used.get(allocator.used.length() - 1);
+        int size = 0;
+        for (int i = 0; i < allocator.used.length(); i++) {
+            long word = data.readLong();
+            allocator.used.set(i, word);
+            size += Long.bitCount(word);
+        }
+        size -= Long.bitCount(tail);
+        if (magic == MAGIC_V2) {
+            int claimed = data.readInt();
+            if (claimed < 0) {
+                throw new IOException("Invalid number of claimed avatars: " + claimed);
+            }
+            for (int i = 0; i < claimed; i++) {
+                long rank = data.readLong();
+                if (rank < 0 || rank >= AvatarIndex.count() || !allocator.claimed.add(rank)) {
+                    throw new IOException("Invalid claimed avatar: " + rank);
+                }
+            }
+            size += claimed;
+        }
+        allocator.size.set(size);
+        return allocator;
+    }
+
+    /**
+     * Writes the allocator so that it can be restored with {@link #readFrom(InputStream)}. Allocations made
+     * concurrently with writing may or may not be included.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream could not be written.
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC_V2);
+        data.writeLong(AvatarIndex.count());
+        data.writeInt(capacity);
+        for (int i = 0; i < used.length(); i++) {
+            data.writeLong(used.get(i));
+        }
+        long[] ranks = claimed.toArray();
+        data.writeInt(ranks.length);
+        for (long rank : ranks) {
+            data.writeLong(rank);
+        }
+        data.flush();
+    }
+
+    /**
+     * Returns the maximum number of avatars that can be allocated.
+     *
+     * @return the maximum number of avatars that can be allocated.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of avatars that have been allocated or claimed.
+     *
+     * @return the number of avatars that have been allocated or claimed.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Allocates an avatar that has not been allocated before.
+     *
+     * @param name the name of the avatar.
+     * @return the avatar.
+     * @throws IllegalStateException if every avatar has been allocated.
+     */
+    @NonNull
+    public AvatarBuilder allocate(@NonNull String name) {
+        int hash = name.hashCode() * 0x9e3779b9;
+        hash ^= hash >>> 16;
+        int start = Math.floorMod(hash, capacity);
+        int words = used.length();
+        int word = start >>> 6;
+        long mask = -1L << (start & 63);
+        for (int i = 0; i <= words; i++) {
+            long current = used.get(word);
+            long free = ~current & mask;
+            while (free != 0) {
+                int bit = Long.numberOfTrailingZeros(free);
+                if (used.compareAndSet(word, current, current | (1L << bit))) {
+                    size.incrementAndGet();
+                    return AvatarIndex.unrank(name, rank((word << 6) + bit));
+                }
+                current = used.get(word);
+                free = ~current & mask;
+            }
+            word = word + 1 == words ? 0 : word + 1;
+            mask = -1L;
+        }
+        throw new IllegalStateException("All " + capacity + " avatars have been allocated");
+    }
+
+    /**
+     * Claims an avatar that was assigned by some other means, for example to record the avatars of existing users, so
+     * that it will never be allocated.
+     *
+     * @param avatar the avatar.
+     * @return {@code true} if the avatar was claimed, {@code false} if it had already been allocated or claimed.
+     * @throws IllegalArgumentException if the avatar is not in the {@link AvatarIndex}.
+     */
+    public boolean claim(@NonNull AvatarBuilder avatar) {
+        long rank = AvatarIndex.rank(avatar);
+        int slot = slot(avatar.getHead(), rank);
+        if (slot < 0) {
+            if (!claimed.add(rank)) {
+                return false;
+            }
+            size.incrementAndGet();
+            return true;
+        }
+        long bit = 1L << (slot & 63);
+        long current;
+        do {
+            current = used.get(slot >>> 6);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!used.compareAndSet(slot >>> 6, current, current | bit));
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Releases an avatar so that it can be allocated or claimed again.
+     *
+     * @param avatar the avatar.
+     * @return {@code true} if the avatar was released, {@code false} if it was not allocated or claimed.
+     * @throws IllegalArgumentException if the avatar is not in the {@link AvatarIndex}.
+     */
+    public boolean release(@NonNull AvatarBuilder avatar) {
+        long rank = AvatarIndex.rank(avatar);
+        int slot = slot(avatar.getHead(), rank);
+        if (slot < 0) {
+            if (!claimed.remove(rank)) {
+                return false;
+            }
+            size.decrementAndGet();
+            return true;
+        }
+        long bit = 1L << (slot & 63);
+        long current;
+        do {
+            current = used.get(slot >>> 6);
+            if ((current & bit) == 0) {
+                return false;
+            }
+        } while (!used.compareAndSet(slot >>> 6, current, current & ~bit));
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Checks if an avatar has been allocated or claimed.
+     *
+     * @param avatar the avatar.
+     * @return {@code true} if the avatar has been allocated or claimed.
+     * @throws IllegalArgumentException if the avatar is not in the {@link AvatarIndex}.
+     */
+    public boolean isAllocated(@NonNull AvatarBuilder avatar) {
+        long rank = AvatarIndex.rank(avatar);
+        int slot = slot(avatar.getHead(), rank);
+        if (slot < 0) {
+            return claimed.contains(rank);
+        }
+        return (used.get(slot >>> 6) & (1L << (slot & 63))) != 0;
+    }
+
+    private static long rank(int slot) {
+        AvatarBuilder.Head head = HEADS[slot % HEADS.length];
+        long index = slot / HEADS.length;
+        return AvatarIndex.offset(head)
+                + multiplyMod(index, STRIDES[head.ordinal()], AvatarIndex.count(head));
+    }
+
+    /**
+     * Returns the slot that maps to a rank, or {@code -1} if no slot maps to it.
+     */
+    private int slot(AvatarBuilder.Head head, long rank) {
+        long index = multiplyMod(rank - AvatarIndex.offset(head),
+                INVERSE_STRIDES[head.ordinal()], AvatarIndex.count(head));
+        if (index >= ((long) capacity + HEADS.length - 1) / HEADS.length) {
+            return -1;
+        }
+        long slot = index * HEADS.length + head.ordinal();
+        return slot < capacity ? (int) slot : -1;
+    }
+
+    /**
+     * Computes {@code (a * b) % m} without overflow for {@code 0 <= a, b < m}.
+     */
+    private static long multiplyMod(long a, long b, long m) {
+        long result = 0;
+        a %= m;
+        while (b > 0) {
+            if ((b & 1) != 0) {
+                result = addMod(result, a, m);
+            }
+            a = addMod(a, a, m);
+            b >>>= 1;
+        }
+        return result;
+    }
+
+    private static long addMod(long a, long b, long m) {
+        // a + b < 2 * m <= 2^64 so the unsigned sum cannot overflow
+        long sum = a + b;
+        return Long.compareUnsigned(sum, m) >= 0 ? sum - m : sum;
+    }
+
+    /**
+     * A set of ranks, using linear probing in a table that is kept between a quarter and a half full.
+     */
+    private static final class RankSet {
+        private static final long EMPTY = -1L;
+        @NonNull
+        private long[] table = empty(16);
+        private int size;
+
+        synchronized boolean add(long rank) {
+            if ((size + 1) * 2 > table.length) {
+                long[] old = table;
+                table = empty(old.length * 2);
+                for (long r : old) {
+                    if (r != EMPTY) {
+                        table[find(r)] = r;
+                    }
+                }
+            }
+            int i = find(rank);
+            if (table[i] == rank) {
+                return false;
+            }
+            table[i] = rank;
+            size++;
+            return true;
+        }
+
+        synchronized boolean contains(long rank) {
+            return table[find(rank)] == rank;
+        }
+
+        synchronized boolean remove(long rank) {
+            int hole = find(rank);
+            if (table[hole] != rank) {
+                return false;
+            }
+            int mask = table.length - 1;
+            // shift back any later entry of the run that may not be found once the hole is emptied
+            for (int i = (hole + 1) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+                int home = home(table[i]);
+                boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+                if (!reachable) {
+                    table[hole] = table[i];
+                    hole = i;
+                }
+            }
+            table[hole] = EMPTY;
+            size--;
+            return true;
+        }
+
+        @NonNull
+        synchronized long[] toArray() {
+            long[] ranks = new long[size];
+            int n = 0;
+            for (long r : table) {
+                if (r != EMPTY) {
+                    ranks[n++] = r;
+                }
+            }
+            return ranks;
+        }
+
+        /**
+         * Returns the index of the rank, or of the empty entry where it would be added.
+         */
+        private int find(long rank) {
+            int mask = table.length - 1;
+            int i = home(rank);
+            while (table[i] != EMPTY && table[i] != rank) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private int home(long rank) {
+            long mixed = rank * 0x9e3779b97f4a7c15L;
+            return (int) (mixed ^ (mixed >>> 32)) & (table.length - 1);
+        }
+
+        private static long[] empty(int size) {
+            long[] table = new long[size];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+    }
+}
@@ -2,16 +2,11 @@ package io.github.stephenc.avatar.factory;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -19,26 +14,22 @@ import java.util.stream.Stream;
  * Renders an SVG avatar.
  */
 public class AvatarBuilder {
-    private static final String NOSE = load("common/Nose");
-    private static final String EYES = load("common/Eyes");
-    private static final String BACKGROUND = load("common/Background");
-    private static final String AVATAR = load("Avatar");
     @NonNull
     private final String name;
     @CheckForNull
     private Accessory accessory;
     @NonNull
-    private Color accessoryColor;
+    private Palette.Swatch accessoryColor;
     @CheckForNull
-    private Color backgroundColor;
+    private Palette.Swatch backgroundColor;
     @NonNull
-    private Color backgroundSecondaryColor;
+    private Palette.Swatch backgroundSecondaryColor;
     @CheckForNull
     private Clothes clothes;
     @NonNull
-    private Color clothesColor;
+    private Palette.Swatch clothesColor;
     @NonNull
-    private Color clothesSecondaryColor;
+    private Palette.Swatch clothesSecondaryColor;
     @NonNull
     private Eyes eyes;
     @NonNull
@@ -46,7 +37,7 @@ public class AvatarBuilder {
     @CheckForNull
     private Glasses glasses;
     @NonNull
-    private Color glassesColor;
+    private Palette.Swatch glassesColor;
     @CheckForNull
     private FacialHair facialHair;
     @NonNull
@@ -65,6 +56,15 @@ public class AvatarBuilder {
     private SkinColor noseColor;
     @NonNull
     private SkinColor skinColor;
+    /**
+     * The previously rendered layers, once this avatar has been built.
+     */
+    @CheckForNull
+    private String[] fragments;
+    /**
+     * The bit mask of layers that have been modified since they were last rendered.
+     */
+    private int dirty = AvatarRenderer.ALL_LAYERS;
 
     /**
      * Creates an empty template avatar.
@@ -83,16 +83,16 @@ public class AvatarBuilder {
         this.noseColor = noseColor;
         this.skinColor = skinColor;
         this.accessory = null;
-        this.accessoryColor = Color.BLACK;
+        this.accessoryColor = Color.BLACK.swatch();
         this.backgroundColor = null;
-        this.backgroundSecondaryColor = Color.WHITE;
+        this.backgroundSecondaryColor = Color.WHITE.swatch();
         this.clothes = null;
-        this.clothesColor = Color.CONCRETE;
-        this.clothesSecondaryColor = Color.GREY;
+        this.clothesColor = Color.CONCRETE.swatch();
+        this.clothesSecondaryColor = Color.GREY.swatch();
         this.eyes = Eyes.OPEN;
         this.eyesColor = EyesColor.GREEN_GREY;
         this.glasses = null;
-        this.glassesColor = Color.BLACK;
+        this.glassesColor = Color.BLACK.swatch();
         this.hair = null;
         this.hairColor = HairColor.GREY;
         this.facialHair = null;
@@ -110,31 +110,28 @@ public class AvatarBuilder {
      */
     public AvatarBuilder(@NonNull String name) {
         this.name = name;
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("JLS mandates support for SHA-256, this is not a valid JVM", e);
-        }
-        md.update(new byte[] {3, 78, -123, -99});
-        byte[] seed = md.digest(name.getBytes(StandardCharsets.UTF_8));
+        byte[] seed = NameSeed.of(name);
         head = pick(seed[0], Arrays.asList(Head.values()));
         accessory = pick(seed[1], matchingAccessories());
         List<Color> colors = new ArrayList<>(Arrays.asList(Color.values()));
-        accessoryColor = pick(seed[2], colors);
+        Color accessoryColor = pick(seed[2], colors);
         colors.remove(accessoryColor);
+        this.accessoryColor = accessoryColor.swatch();
         clothes = pick(seed[3], matchingClothes());
-        clothesColor = pick(seed[4], colors);
+        Color clothesColor = pick(seed[4], colors);
         colors.remove(clothesColor);
-        clothesSecondaryColor = pick(seed[5], colors);
+        this.clothesColor = clothesColor.swatch();
+        Color clothesSecondaryColor = pick(seed[5], colors);
         colors.remove(clothesSecondaryColor);
-        backgroundColor = pick(seed[6], colors);
+        this.clothesSecondaryColor = clothesSecondaryColor.swatch();
+        Color backgroundColor = pick(seed[6], colors);
         colors.remove(backgroundColor);
-        backgroundSecondaryColor = pick(seed[7], colors);
+        this.backgroundColor = backgroundColor.swatch();
+        backgroundSecondaryColor = pick(seed[7], colors).swatch();
         eyes = pick(seed[8], Arrays.asList(Eyes.values()));
         eyesColor = pick(seed[9], Arrays.asList(EyesColor.values()));
         glasses = pick(seed[10], matchingGlasses());
-        glassesColor = pick(seed[11], Arrays.asList(Color.values()));
+        glassesColor = pick(seed[11], Arrays.asList(Color.values())).swatch();
         facialHair = pick(seed[12], matchingFacialHair());
         facialHairColor = pick(seed[13], Arrays.asList(HairColor.values()));
         hair = pick(seed[14], matchingHair());
@@ -147,37 +144,43 @@ public class AvatarBuilder {
         noseColor = pick(seed[19], skinColors);
     }
 
+    /**
+     * Creates a copy of the supplied avatar so that it can be rendered independently of further changes.
+     *
+     * @param other the avatar to copy.
+     */
+    AvatarBuilder(@NonNull AvatarBuilder other) {
+        this.name = other.name;
+        this.accessory = other.accessory;
+        this.accessoryColor = other.accessoryColor;
+        this.backgroundColor = other.backgroundColor;
+        this.backgroundSecondaryColor = other.backgroundSecondaryColor;
+        this.clothes = other.clothes;
+        this.clothesColor = other.clothesColor;
+        this.clothesSecondaryColor = other.clothesSecondaryColor;
+        this.eyes = other.eyes;
+        this.eyesColor = other.eyesColor;
+        this.glasses = other.glasses;
+        this.glassesColor = other.glassesColor;
+        this.facialHair = other.facialHair;
+        this.facialHairColor = other.facialHairColor;
+        this.head = other.head;
+        this.hair = other.hair;
+        this.hairColor = other.hairColor;
+        this.mouth = other.mouth;
+        this.mouthColor = other.mouthColor;
+        this.noseColor = other.noseColor;
+        this.skinColor = other.skinColor;
+    }
+
     private static <T> T pick(byte random, List<T> options) {
         int n = random ^ (7 * random) ^ (random >> 4) ^ (31 * random >> 2);
         return options.get(Math.abs(n) % options.size());
     }
 
-    private static String load(String template) {
-        byte[] buf = new byte[1024];
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try (InputStream is = AvatarBuilder.class.getResourceAsStream(template + ".svg.hbs")) {
-            int len;
-            while (-1 != (len = is.read(buf))) {
-                bos.write(buf, 0, len);
-            }
-            return bos.toString(StandardCharsets.UTF_8.name());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String darkenColor(String color, float ratio) {
-        int r = Math.round(Integer.parseInt(color.substring(1, 3), 16) * (1 - ratio));
-        int g = Math.round(Integer.parseInt(color.substring(3, 5), 16) * (1 - ratio));
-        int b = Math.round(Integer.parseInt(color.substring(5, 7), 16) * (1 - ratio));
-        return String.format("#%02x%02x%02x", Math.max(0, r), Math.max(0, g), Math.max(0, b));
-    }
-
-    private static String lightenColor(String color, float ratio) {
-        int r = Math.round(Integer.parseInt(color.substring(1, 3), 16) * (1 + ratio));
-        int g = Math.round(Integer.parseInt(color.substring(3, 5), 16) * (1 + ratio));
-        int b = Math.round(Integer.parseInt(color.substring(5, 7), 16) * (1 + ratio));
-        return String.format("#%02x%02x%02x", Math.min(255, r), Math.min(255, g), Math.min(255, b));
+    @NonNull
+    public String getName() {
+        return name;
     }
 
     @CheckForNull
@@ -188,7 +191,15 @@ public class AvatarBuilder {
     @NonNull
     public AvatarBuilder accessory(@CheckForNull Accessory accessory, @CheckForNull Color color) {
         this.accessory = accessory;
-        this.accessoryColor = color == null ? Color.BLACK : color;
+        this.accessoryColor = color == null ? Color.BLACK.swatch() : color.swatch();
+        dirty |= 1 << AvatarRenderer.ACCESSORY_LAYER;
+        return this;
+    }
+
+    @NonNull
+    public AvatarBuilder accessoryColor(@NonNull Palette.Swatch color) {
+        this.accessoryColor = color;
+        dirty |= 1 << AvatarRenderer.ACCESSORY_LAYER;
         return this;
     }
 
@@ -199,25 +210,61 @@ public class AvatarBuilder {
                 .collect(Collectors.toList());
     }
 
-    @NonNull
+    /**
+     * Returns the accessory color, or {@code null} if it is not a {@link Palette.Swatch#isBuiltIn() built-in}
+     * color, in which case use {@link #getAccessorySwatch()}.
+     */
+    @CheckForNull
     public Color getAccessoryColor() {
+        return accessoryColor.getColor();
+    }
+
+    @NonNull
+    public Palette.Swatch getAccessorySwatch() {
         return accessoryColor;
     }
 
+    /**
+     * Returns the background color, or {@code null} if it is not a {@link Palette.Swatch#isBuiltIn() built-in}
+     * color, in which case use {@link #getBackgroundSwatch()}.
+     */
     @CheckForNull
     public Color getBackgroundColor() {
+        return backgroundColor == null ? null : backgroundColor.getColor();
+    }
+
+    @CheckForNull
+    public Palette.Swatch getBackgroundSwatch() {
         return backgroundColor;
     }
 
     @NonNull
     public AvatarBuilder background(@CheckForNull Color color, @CheckForNull Color secondaryColor) {
-        this.backgroundColor = color;
-        this.backgroundSecondaryColor = secondaryColor == null ? Color.WHITE : secondaryColor;
+        this.backgroundColor = color == null ? null : color.swatch();
+        this.backgroundSecondaryColor = secondaryColor == null ? Color.WHITE.swatch() : secondaryColor.swatch();
+        dirty |= 1 << AvatarRenderer.BACKGROUND_LAYER;
         return this;
     }
 
     @NonNull
+    public AvatarBuilder backgroundColor(@CheckForNull Palette.Swatch color, @NonNull Palette.Swatch secondaryColor) {
+        this.backgroundColor = color;
+        this.backgroundSecondaryColor = secondaryColor;
+        dirty |= 1 << AvatarRenderer.BACKGROUND_LAYER;
+        return this;
+    }
+
+    /**
+     * Returns the background secondary color, or {@code null} if it is not a
+     * {@link Palette.Swatch#isBuiltIn() built-in} color, in which case use {@link #getBackgroundSecondarySwatch()}.
+     */
+    @CheckForNull
     public Color getBackgroundSecondaryColor() {
+        return backgroundSecondaryColor.getColor();
+    }
+
+    @NonNull
+    public Palette.Swatch getBackgroundSecondarySwatch() {
         return backgroundSecondaryColor;
     }
 
@@ -230,8 +277,17 @@ public class AvatarBuilder {
     public AvatarBuilder clothes(@CheckForNull Clothes clothes, @CheckForNull Color color,
                                  @CheckForNull Color secondaryColor) {
         this.clothes = clothes;
-        this.clothesColor = color == null ? Color.CONCRETE : color;
-        this.clothesSecondaryColor = secondaryColor == null ? Color.PETER_RIVER : secondaryColor;
+        this.clothesColor = color == null ? Color.CONCRETE.swatch() : color.swatch();
+        this.clothesSecondaryColor = secondaryColor == null ? Color.PETER_RIVER.swatch() : secondaryColor.swatch();
+        dirty |= 1 << AvatarRenderer.CLOTHES_LAYER;
+        return this;
+    }
+
+    @NonNull
+    public AvatarBuilder clothesColor(@NonNull Palette.Swatch color, @NonNull Palette.Swatch secondaryColor) {
+        this.clothesColor = color;
+        this.clothesSecondaryColor = secondaryColor;
+        dirty |= 1 << AvatarRenderer.CLOTHES_LAYER;
         return this;
     }
 
@@ -242,13 +298,31 @@ public class AvatarBuilder {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the clothes color, or {@code null} if it is not a {@link Palette.Swatch#isBuiltIn() built-in}
+     * color, in which case use {@link #getClothesSwatch()}.
+     */
     @CheckForNull
     public Color getClothesColor() {
+        return clothesColor.getColor();
+    }
+
+    @NonNull
+    public Palette.Swatch getClothesSwatch() {
         return clothesColor;
     }
 
+    /**
+     * Returns the clothes secondary color, or {@code null} if it is not a {@link Palette.Swatch#isBuiltIn() built-in}
+     * color, in which case use {@link #getClothesSecondarySwatch()}.
+     */
     @CheckForNull
     public Color getClothesSecondaryColor() {
+        return clothesSecondaryColor.getColor();
+    }
+
+    @NonNull
+    public Palette.Swatch getClothesSecondarySwatch() {
         return clothesSecondaryColor;
     }
 
@@ -261,6 +335,7 @@ public class AvatarBuilder {
     public AvatarBuilder eyes(@NonNull Eyes eyes, @NonNull EyesColor eyesColor) {
         this.eyes = eyes;
         this.eyesColor = eyesColor;
+        dirty |= 1 << AvatarRenderer.EYES_LAYER;
         return this;
     }
 
@@ -277,7 +352,15 @@ public class AvatarBuilder {
     @NonNull
     public AvatarBuilder glasses(@CheckForNull Glasses glasses, Color color) {
         this.glasses = glasses;
-        this.glassesColor = color == null ? Color.BLACK : color;
+        this.glassesColor = color == null ? Color.BLACK.swatch() : color.swatch();
+        dirty |= 1 << AvatarRenderer.GLASSES_LAYER;
+        return this;
+    }
+
+    @NonNull
+    public AvatarBuilder glassesColor(@NonNull Palette.Swatch color) {
+        this.glassesColor = color;
+        dirty |= 1 << AvatarRenderer.GLASSES_LAYER;
         return this;
     }
 
@@ -288,8 +371,17 @@ public class AvatarBuilder {
                 .collect(Collectors.toList());
     }
 
-    @NonNull
+    /**
+     * Returns the glasses color, or {@code null} if it is not a {@link Palette.Swatch#isBuiltIn() built-in}
+     * color, in which case use {@link #getGlassesSwatch()}.
+     */
+    @CheckForNull
     public Color getGlassesColor() {
+        return glassesColor.getColor();
+    }
+
+    @NonNull
+    public Palette.Swatch getGlassesSwatch() {
         return glassesColor;
     }
 
@@ -302,6 +394,7 @@ public class AvatarBuilder {
     public AvatarBuilder facialHair(@CheckForNull FacialHair facialHair, @CheckForNull HairColor facialHairColor) {
         this.facialHair = facialHair;
         this.facialHairColor = facialHairColor == null ? HairColor.GREY : facialHairColor;
+        dirty |= 1 << AvatarRenderer.FACIAL_HAIR_LAYER;
         return this;
     }
 
@@ -327,6 +420,7 @@ public class AvatarBuilder {
         this.head = head;
         this.skinColor = skinColor;
         this.noseColor = noseColor;
+        dirty |= (1 << AvatarRenderer.HEAD_LAYER) | (1 << AvatarRenderer.NOSE_LAYER);
         return this;
     }
 
@@ -339,6 +433,7 @@ public class AvatarBuilder {
     public AvatarBuilder hair(@CheckForNull Hair hair, @CheckForNull HairColor hairColor) {
         this.hair = hair;
         this.hairColor = hairColor == null ? HairColor.GREY : hairColor;
+        dirty |= 1 << AvatarRenderer.HAIR_LAYER;
         return this;
     }
 
@@ -363,6 +458,7 @@ public class AvatarBuilder {
     public AvatarBuilder mouth(@NonNull Mouth mouth, @NonNull LipColor mouthColor) {
         this.mouth = mouth;
         this.mouthColor = mouthColor;
+        dirty |= 1 << AvatarRenderer.MOUTH_LAYER;
         return this;
     }
 
@@ -388,121 +484,108 @@ public class AvatarBuilder {
         return skinColor;
     }
 
+    /**
+     * Picks the background and clothes colours from a palette. The colours are deterministically derived from the
+     * name, so the same name will always pick the same colours from the same palette.
+     *
+     * @param palette the palette.
+     * @return this builder.
+     */
     @NonNull
-    public String build() {
-        StringBuilder components = new StringBuilder();
-        if (backgroundColor != null) {
-            components.append(render(
-                    BACKGROUND,
-                    new Binding("color", backgroundColor.color),
-                    new Binding("lighten", ratio -> lightenColor(backgroundColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(backgroundColor.color, Float.parseFloat(ratio))),
-                    new Binding("secondaryColor", backgroundSecondaryColor.color)
-            ));
-        }
-        components.append(render(
-                head.template,
-                new Binding("color", skinColor.color),
-                new Binding("lighten", ratio -> lightenColor(skinColor.color, Float.parseFloat(ratio))),
-                new Binding("darken", ratio -> darkenColor(skinColor.color, Float.parseFloat(ratio)))
-        ));
-        components.append(render(
-                mouth.template,
-                new Binding("color", mouthColor.color),
-                new Binding("lighten", ratio -> lightenColor(mouthColor.color, Float.parseFloat(ratio))),
-                new Binding("darken", ratio -> darkenColor(mouthColor.color, Float.parseFloat(ratio)))));
-        components.append(render(
-                NOSE,
-                new Binding("color", noseColor.color),
-                new Binding("lighten", ratio -> lightenColor(noseColor.color, Float.parseFloat(ratio))),
-                new Binding("darken", ratio -> darkenColor(noseColor.color, Float.parseFloat(ratio)))));
-        components.append(render(
-                EYES,
-                new Binding("color", eyesColor.color),
-                new Binding("lighten", ratio -> lightenColor(eyesColor.color, Float.parseFloat(ratio))),
-                new Binding("darken", ratio -> darkenColor(eyesColor.color, Float.parseFloat(ratio))),
-                new Binding("secondaryColor", darkenColor(eyesColor.color, 0.15f)),
-                new Binding("gradientId", eyesColor.color.replace('#', '_')),
-                new Binding("component", x -> render(eyes.template, new Binding("color", eyesColor.color),
-                        new Binding("lighten", ratio -> lightenColor(eyesColor.color, Float.parseFloat(ratio))),
-                        new Binding("darken", ratio -> darkenColor(eyesColor.color, Float.parseFloat(ratio))),
-                        new Binding("secondaryColor", darkenColor(eyesColor.color, 0.15f)),
-                        new Binding("gradientUrl", "url(#" + eyesColor.color.replace('#', '_') + ")")
-                ))));
-        if (hair != null) {
-            components.append(render(
-                    hair.outerTemplate,
-                    new Binding("color", hairColor.color),
-                    new Binding("lighten", ratio -> lightenColor(hairColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(hairColor.color, Float.parseFloat(ratio))),
-                    new Binding("component", x -> render(hair.template,
-                            new Binding("color", hairColor.color),
-                            new Binding("lighten", ratio -> lightenColor(hairColor.color, Float.parseFloat(ratio))),
-                            new Binding("darken", ratio -> darkenColor(hairColor.color, Float.parseFloat(ratio)))))));
-        }
-        if (glasses != null) {
-            components.append(render(glasses.template,
-                    new Binding("color", glassesColor.color),
-                    new Binding("lighten", ratio -> lightenColor(glassesColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(glassesColor.color, Float.parseFloat(ratio)))));
-        }
-        if (clothes != null) {
-            components.append(render(clothes.template,
-                    new Binding("color", clothesColor.color),
-                    new Binding("lighten", ratio -> lightenColor(clothesColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(clothesColor.color, Float.parseFloat(ratio))),
-                    new Binding("secondaryColor", clothesSecondaryColor.color)));
-        }
-        if (accessory != null) {
-            components.append(render(accessory.template,
-                    new Binding("color", accessoryColor.color),
-                    new Binding("lighten", ratio -> lightenColor(accessoryColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(accessoryColor.color, Float.parseFloat(ratio)))));
-        }
-        if (facialHair != null) {
-            components.append(render(facialHair.template,
-                    new Binding("color", facialHairColor.color),
-                    new Binding("lighten", ratio -> lightenColor(facialHairColor.color, Float.parseFloat(ratio))),
-                    new Binding("darken", ratio -> darkenColor(facialHairColor.color, Float.parseFloat(ratio)))));
-        }
-        return render(AVATAR,
-                new Binding("name", name),
-                new Binding("components", components.toString())
-        );
-    }
-
-    private static String render(String template, Binding... bindings) {
-        StringBuilder result = new StringBuilder(template.length() + 1024);
-        int current = 0;
-        int bindingStart;
-        while (-1 != (bindingStart = template.indexOf("{{", current))) {
-            int bindingEnd = template.indexOf("}}", bindingStart);
-            if (bindingEnd == -1) {
-                break;
+    public AvatarBuilder theme(@NonNull Palette palette) {
+        List<Palette.Swatch> colors = new ArrayList<>(palette.getColors());
+        Palette.Swatch[] picked = new Palette.Swatch[4];
+        long state = name.hashCode();
+        for (int i = 0; i < picked.length; i++) {
+            // SplitMix64
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            z = z ^ (z >>> 31);
+            picked[i] = colors.get((int) Long.remainderUnsigned(z, colors.size()));
+            if (colors.size() > 1) {
+                colors.remove(picked[i]);
             }
-            result.append(template, current, bindingStart);
-            int argStart = template.indexOf('(', bindingStart);
-            String name;
-            String arg;
-            if (argStart != -1 && argStart < bindingEnd && template.charAt(bindingEnd - 1) == ')') {
-                // we have an argument
-                name = template.substring(bindingStart + 2, argStart);
-                arg = template.substring(argStart + 1, bindingEnd - 1);
-            } else {
-                name = template.substring(bindingStart + 2, bindingEnd);
-                arg = null;
-            }
-            result.append(Stream.of(bindings)
-                    .filter(b -> name.equals(b.name))
-                    .findFirst()
-                    .map(b -> b.source.apply(arg))
-                    .orElse(template.substring(bindingStart, bindingEnd + 2)));
-            current = bindingEnd + 2;
         }
-        if (current < template.length()) {
-            result.append(template.substring(current));
+        return backgroundColor(picked[0], picked[1]).clothesColor(picked[2], picked[3]);
+    }
+
+    /**
+     * Renders the avatar. When an avatar is modified and built again, only the layers affected by the modifications
+     * are rendered again, so interactive editing does not pay for re-rendering the unchanged layers.
+     *
+     * @return the SVG.
+     */
+    @NonNull
+    public String build() {
+        if (fragments == null) {
+            // most avatars are only built once, so only start keeping the layers from the second build onwards
+            fragments = new String[AvatarRenderer.LAYERS];
+            return AvatarRenderer.DEFAULT.render(this);
         }
-        return result.toString();
+        String result = AvatarRenderer.DEFAULT.render(this, fragments, dirty);
+        dirty = 0;
+        return result;
+    }
+
+    /**
+     * Renders the avatar as a Base64 {@code data:} URI, suitable for inlining into HTML or JSON.
+     *
+     * @return the URI.
+     */
+    @NonNull
+    public String buildDataUri() {
+        return buildDataUri(AvatarRenderer.DataUriEncoding.BASE64);
+    }
+
+    /**
+     * Renders the avatar as a {@code data:} URI, suitable for inlining into HTML or JSON.
+     *
+     * @param encoding how to encode the SVG.
+     * @return the URI.
+     */
+    @NonNull
+    public String buildDataUri(@NonNull AvatarRenderer.DataUriEncoding encoding) {
+        return AvatarRenderer.DEFAULT.renderDataUri(this, encoding);
+    }
+
+    /**
+     * Renders the avatar as a {@code data:} URI, encoding the SVG as it is written rather than building intermediate
+     * copies.
+     *
+     * @param encoding how to encode the SVG.
+     * @param out      where to write the URI.
+     * @throws IOException if the URI could not be written.
+     */
+    public void buildDataUri(@NonNull AvatarRenderer.DataUriEncoding encoding, @NonNull Appendable out)
+            throws IOException {
+        AvatarRenderer.DEFAULT.renderDataUri(this, encoding, out);
+    }
+
+    /**
+     * Renders the avatar as an ASCII {@code data:} URI, encoding the SVG as it is written rather than building
+     * intermediate copies.
+     *
+     * @param encoding how to encode the SVG.
+     * @param out      where to write the URI.
+     * @throws IOException if the URI could not be written.
+     */
+    public void buildDataUri(@NonNull AvatarRenderer.DataUriEncoding encoding, @NonNull OutputStream out)
+            throws IOException {
+        AvatarRenderer.DEFAULT.renderDataUri(this, encoding, out);
+    }
+
+    /**
+     * Renders the avatar for display at a specific size. The SVG has an explicit {@code width} and {@code height}, and
+     * avatars for small sizes, such as in lists, leave out detail that would not be visible anyway.
+     *
+     * @param sizeHint the size, in pixels, that the avatar will be displayed at.
+     * @return the SVG.
+     */
+    @NonNull
+    public String build(int sizeHint) {
+        return AvatarRenderer.DEFAULT.render(this, sizeHint);
     }
 
     public enum TemplateGroup {
@@ -524,11 +607,16 @@ public class AvatarBuilder {
         };
 
         private final String name;
-        private final String template;
+        private final String path;
 
         Head(String name, String path) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
+        }
+
+        @NonNull
+        String path() {
+            return path;
         }
 
         @Override
@@ -564,11 +652,21 @@ public class AvatarBuilder {
 
         private final String name;
 
-        private final String color;
+        private final Paint paint;
 
         Color(String name, String color) {
             this.name = name;
-            this.color = color;
+            this.paint = new Paint(color);
+        }
+
+        @NonNull
+        Palette.Swatch swatch() {
+            return Palette.BUILT_IN.getColors().get(ordinal());
+        }
+
+        @NonNull
+        Paint paint() {
+            return paint;
         }
 
         @Override
@@ -602,14 +700,19 @@ public class AvatarBuilder {
 
         private final String name;
 
-        private final String color;
+        private final Paint paint;
 
         LipColor(String name, String color) {
             this.name = name;
-            this.color = color;
+            this.paint = new Paint(color);
         }
 
 
+        @NonNull
+        Paint paint() {
+            return paint;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return this == NO_LIPSTICK ? TemplateGroup.COMMON : TemplateGroup.FEMALE;
@@ -631,11 +734,16 @@ public class AvatarBuilder {
 
         private final String name;
 
-        private final String color;
+        private final Paint paint;
 
         SkinColor(String name, String color) {
             this.name = name;
-            this.color = color;
+            this.paint = new Paint(color);
+        }
+
+        @NonNull
+        Paint paint() {
+            return paint;
         }
 
         @Override
@@ -651,15 +759,20 @@ public class AvatarBuilder {
         FEMALE_B("Headdress", "female/accessory/TypeB", TemplateGroup.FEMALE);
 
         private final String name;
-        private final String template;
+        private final String path;
         private final TemplateGroup templateGroup;
 
         Accessory(String name, String path, TemplateGroup templateGroup) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
             this.templateGroup = templateGroup;
         }
 
+        @NonNull
+        String path() {
+            return path;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return templateGroup;
@@ -686,15 +799,20 @@ public class AvatarBuilder {
         FEMALE_F("V-shirt", "female/clothes/TypeF", TemplateGroup.FEMALE);
 
         private final String name;
-        private final String template;
+        private final String path;
         private final TemplateGroup templateGroup;
 
         Clothes(String name, String path, TemplateGroup templateGroup) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
             this.templateGroup = templateGroup;
         }
 
+        @NonNull
+        String path() {
+            return path;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return templateGroup;
@@ -712,11 +830,16 @@ public class AvatarBuilder {
         WINK_RIGHT("Wink right", "common/eyes/TypeC"),
         HAPPY("Happy", "common/eyes/TypeD");
         private final String name;
-        private final String template;
+        private final String path;
 
         Eyes(String name, String path) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
+        }
+
+        @NonNull
+        String path() {
+            return path;
         }
 
         @Override
@@ -735,11 +858,16 @@ public class AvatarBuilder {
 
         private final String name;
 
-        private final String color;
+        private final Paint paint;
 
         EyesColor(String name, String color) {
             this.name = name;
-            this.color = color;
+            this.paint = new Paint(color);
+        }
+
+        @NonNull
+        Paint paint() {
+            return paint;
         }
 
         @Override
@@ -756,15 +884,20 @@ public class AvatarBuilder {
         MALE_A("Elegant", "male/glasses/TypeA", TemplateGroup.MALE),
         FEMALE_A("Elegant", "female/glasses/TypeA", TemplateGroup.FEMALE);
         private final String name;
-        private final String template;
+        private final String path;
         private final TemplateGroup templateGroup;
 
         Glasses(String name, String path, TemplateGroup templateGroup) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
             this.templateGroup = templateGroup;
         }
 
+        @NonNull
+        String path() {
+            return path;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return templateGroup;
@@ -792,17 +925,20 @@ public class AvatarBuilder {
         FEMALE_F("Mikado", "female/hair/TypeF", TemplateGroup.FEMALE),
         FEMALE_G("Straight long", "female/hair/TypeG", TemplateGroup.FEMALE);
         private final String name;
-        private final String template;
-        private final String outerTemplate;
+        private final String path;
         private final TemplateGroup templateGroup;
 
         Hair(String name, String path, TemplateGroup templateGroup) {
             this.name = name;
-            this.template = load(path);
-            this.outerTemplate = load(templateGroup == TemplateGroup.MALE ? "male/Hair" : "female/Hair");
+            this.path = path;
             this.templateGroup = templateGroup;
         }
 
+        @NonNull
+        String path() {
+            return path;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return templateGroup;
@@ -840,11 +976,16 @@ public class AvatarBuilder {
 
         private final String name;
 
-        private final String color;
+        private final Paint paint;
 
         HairColor(String name, String color) {
             this.name = name;
-            this.color = color;
+            this.paint = new Paint(color);
+        }
+
+        @NonNull
+        Paint paint() {
+            return paint;
         }
 
         @Override
@@ -861,15 +1002,20 @@ public class AvatarBuilder {
         MOUSTASHE("Moustashe", "male/facial-hair/TypeE", TemplateGroup.MALE);
 
         private final String name;
-        private final String template;
+        private final String path;
         private final TemplateGroup templateGroup;
 
         FacialHair(String name, String path, TemplateGroup templateGroup) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
             this.templateGroup = templateGroup;
         }
 
+        @NonNull
+        String path() {
+            return path;
+        }
+
         @Override
         public TemplateGroup templateGroup() {
             return templateGroup;
@@ -888,11 +1034,16 @@ public class AvatarBuilder {
         CLEVER("Clever", "common/mouth/TypeD");
 
         private final String name;
-        private final String template;
+        private final String path;
 
         Mouth(String name, String path) {
             this.name = name;
-            this.template = load(path);
+            this.path = path;
+        }
+
+        @NonNull
+        String path() {
+            return path;
         }
 
         @Override
@@ -909,18 +1060,4 @@ public class AvatarBuilder {
     private interface TemplateAligned {
         TemplateGroup templateGroup();
     }
-
-    private static class Binding {
-        private final String name;
-        private final Function<String, String> source;
-
-        public Binding(String name, String value) {
-            this(name, ignore -> value);
-        }
-
-        public Binding(String name, Function<String, String> source) {
-            this.name = name;
-            this.source = source;
-        }
-    }
 }
@@ -0,0 +1,267 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bijection between every avatar that can be built from the {@code matching*()} options of its head template and a
+ * dense range of ranks, {@code [0, count())}.
+ * <p>
+ * All the male avatars rank before all the female avatars. Within a head template the rank is a mixed radix number
+ * whose digits are, from most to least significant: accessory, accessory colour, clothes, clothes colour, clothes
+ * secondary colour, background colour, background secondary colour, eyes, eyes colour, glasses, glasses colour, facial
+ * hair, facial hair colour, hair, hair colour, mouth, mouth colour, skin colour and nose colour. Colours may be freely
+ * repeated between attributes.
+ */
+public final class AvatarIndex {
+    private static final AvatarBuilder.Color[] COLORS = AvatarBuilder.Color.values();
+    private static final AvatarBuilder.Eyes[] EYES = AvatarBuilder.Eyes.values();
+    private static final AvatarBuilder.EyesColor[] EYES_COLORS = AvatarBuilder.EyesColor.values();
+    private static final AvatarBuilder.HairColor[] HAIR_COLORS = AvatarBuilder.HairColor.values();
+    private static final AvatarBuilder.Mouth[] MOUTHS = AvatarBuilder.Mouth.values();
+    private static final AvatarBuilder.SkinColor[] SKIN_COLORS = AvatarBuilder.SkinColor.values();
+    private static final Space[] SPACES;
+    private static final long COUNT;
+
+    static {
+        AvatarBuilder.Head[] heads = AvatarBuilder.Head.values();
+        SPACES = new Space[heads.length];
+        long count = 0;
+        for (int i = 0; i < heads.length; i++) {
+            SPACES[i] = new Space(heads[i], count);
+            count = Math.addExact(count, SPACES[i].count);
+        }
+        COUNT = count;
+    }
+
+    private AvatarIndex() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Returns the number of distinct avatars.
+     *
+     * @return the number of distinct avatars.
+     */
+    public static long count() {
+        return COUNT;
+    }
+
+    /**
+     * Returns the number of distinct avatars using the supplied head template.
+     *
+     * @param head the head template.
+     * @return the number of distinct avatars using the head template.
+     */
+    public static long count(@NonNull AvatarBuilder.Head head) {
+        return SPACES[head.ordinal()].count;
+    }
+
+    /**
+     * Returns the rank of the first avatar using the supplied head template.
+     *
+     * @param head the head template.
+     * @return the rank of the first avatar using the head template.
+     */
+    public static long offset(@NonNull AvatarBuilder.Head head) {
+        return SPACES[head.ordinal()].offset;
+    }
+
+    /**
+     * Returns the rank of an avatar.
+     *
+     * @param avatar the avatar.
+     * @return the rank of the avatar.
+     * @throws IllegalArgumentException if the avatar has an attribute that is unset or does not match its head.
+     */
+    public static long rank(@NonNull AvatarBuilder avatar) {
+        Space space = SPACES[avatar.getHead().ordinal()];
+        long rank = digit(space.accessoryPositions, avatar.getAccessory(), "accessory");
+        rank = rank * COLORS.length + ordinal(avatar.getAccessorySwatch(), "accessory color");
+        rank = rank * space.clothes.length + digit(space.clothesPositions, avatar.getClothes(), "clothes");
+        rank = rank * COLORS.length + ordinal(avatar.getClothesSwatch(), "clothes color");
+        rank = rank * COLORS.length + ordinal(avatar.getClothesSecondarySwatch(), "clothes secondary color");
+        rank = rank * COLORS.length + ordinal(avatar.getBackgroundSwatch(), "background color");
+        rank = rank * COLORS.length + ordinal(avatar.getBackgroundSecondarySwatch(), "background secondary color");
+        rank = rank * EYES.length + avatar.getEyes().ordinal();
+        rank = rank * EYES_COLORS.length + avatar.getEyesColor().ordinal();
+        rank = rank * space.glasses.length + digit(space.glassesPositions, avatar.getGlasses(), "glasses");
+        rank = rank * COLORS.length + ordinal(avatar.getGlassesSwatch(), "glasses color");
+        rank = rank * space.facialHair.length
+                + digit(space.facialHairPositions, avatar.getFacialHair(), "facial hair");
+        rank = rank * HAIR_COLORS.length + avatar.getFacialHairColor().ordinal();
+        rank = rank * space.hair.length + digit(space.hairPositions, avatar.getHair(), "hair");
+        rank = rank * HAIR_COLORS.length + avatar.getHairColor().ordinal();
+        rank = rank * MOUTHS.length + avatar.getMouth().ordinal();
+        rank = rank * space.lipColors.length + digit(space.lipColorPositions, avatar.getMouthColor(), "mouth color");
+        rank = rank * SKIN_COLORS.length + avatar.getSkinColor().ordinal();
+        rank = rank * SKIN_COLORS.length + avatar.getNoseColor().ordinal();
+        return space.offset + rank;
+    }
+
+    /**
+     * Returns the avatar with the supplied rank.
+     *
+     * @param name the name of the avatar.
+     * @param rank the rank.
+     * @return the avatar.
+     * @throws IllegalArgumentException if the rank is outside of {@code [0, count())}.
+     */
+    @NonNull
+    public static AvatarBuilder unrank(@NonNull String name, long rank) {
+        if (rank < 0 || rank >= COUNT) {
+            throw new IllegalArgumentException("Rank " + rank + " is outside of [0, " + COUNT + ")");
+        }
+        Space space = SPACES[0];
+        for (int i = SPACES.length - 1; i > 0; i--) {
+            if (rank >= SPACES[i].offset) {
+                space = SPACES[i];
+                break;
+            }
+        }
+        long r = rank - space.offset;
+        AvatarBuilder.SkinColor noseColor = SKIN_COLORS[(int) (r % SKIN_COLORS.length)];
+        r /= SKIN_COLORS.length;
+        AvatarBuilder.SkinColor skinColor = SKIN_COLORS[(int) (r % SKIN_COLORS.length)];
+        r /= SKIN_COLORS.length;
+        AvatarBuilder.LipColor mouthColor = space.lipColors[(int) (r % space.lipColors.length)];
+        r /= space.lipColors.length;
+        AvatarBuilder.Mouth mouth = MOUTHS[(int) (r % MOUTHS.length)];
+        r /= MOUTHS.length;
+        AvatarBuilder.HairColor hairColor = HAIR_COLORS[(int) (r % HAIR_COLORS.length)];
+        r /= HAIR_COLORS.length;
+        AvatarBuilder.Hair hair = space.hair[(int) (r % space.hair.length)];
+        r /= space.hair.length;
+        AvatarBuilder.HairColor facialHairColor = HAIR_COLORS[(int) (r % HAIR_COLORS.length)];
+        r /= HAIR_COLORS.length;
+        AvatarBuilder.FacialHair facialHair = space.facialHair[(int) (r % space.facialHair.length)];
+        r /= space.facialHair.length;
+        AvatarBuilder.Color glassesColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Glasses glasses = space.glasses[(int) (r % space.glasses.length)];
+        r /= space.glasses.length;
+        AvatarBuilder.EyesColor eyesColor = EYES_COLORS[(int) (r % EYES_COLORS.length)];
+        r /= EYES_COLORS.length;
+        AvatarBuilder.Eyes eyes = EYES[(int) (r % EYES.length)];
+        r /= EYES.length;
+        AvatarBuilder.Color backgroundSecondaryColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Color backgroundColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Color clothesSecondaryColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Color clothesColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Clothes clothes = space.clothes[(int) (r % space.clothes.length)];
+        r /= space.clothes.length;
+        AvatarBuilder.Color accessoryColor = COLORS[(int) (r % COLORS.length)];
+        r /= COLORS.length;
+        AvatarBuilder.Accessory accessory = space.accessories[(int) r];
+        return new AvatarBuilder(name, space.head, skinColor, noseColor)
+                .accessory(accessory, accessoryColor)
+                .clothes(clothes, clothesColor, clothesSecondaryColor)
+                .background(backgroundColor, backgroundSecondaryColor)
+                .eyes(eyes, eyesColor)
+                .glasses(glasses, glassesColor)
+                .facialHair(facialHair, facialHairColor)
+                .hair(hair, hairColor)
+                .mouth(mouth, mouthColor);
+    }
+
+    private static int digit(int[] positions, @CheckForNull Enum<?> value, String attribute) {
+        int position = positions[ordinal(value, attribute)];
+        if (position < 0) {
+            throw new IllegalArgumentException("The " + attribute + " " + value + " does not match the head");
+        }
+        return position;
+    }
+
+    private static int ordinal(@CheckForNull Enum<?> value, String attribute) {
+        if (value == null) {
+            throw new IllegalArgumentException("The " + attribute + " is not set");
+        }
+        return value.ordinal();
+    }
+
+    private static int ordinal(@CheckForNull Palette.Swatch color, String attribute) {
+        if (color == null) {
+            throw new IllegalArgumentException("The " + attribute + " is not set");
+        }
+        AvatarBuilder.Color builtIn = color.getColor();
+        if (builtIn == null) {
+            throw new IllegalArgumentException("The " + attribute + " " + color + " is not a built-in color");
+        }
+        return builtIn.ordinal();
+    }
+
+    /**
+     * The avatars that use a specific head template.
+     */
+    private static final class Space {
+        private final AvatarBuilder.Head head;
+        private final long offset;
+        private final long count;
+        private final AvatarBuilder.Accessory[] accessories;
+        private final int[] accessoryPositions;
+        private final AvatarBuilder.Clothes[] clothes;
+        private final int[] clothesPositions;
+        private final AvatarBuilder.Glasses[] glasses;
+        private final int[] glassesPositions;
+        private final AvatarBuilder.FacialHair[] facialHair;
+        private final int[] facialHairPositions;
+        private final AvatarBuilder.Hair[] hair;
+        private final int[] hairPositions;
+        private final AvatarBuilder.LipColor[] lipColors;
+        private final int[] lipColorPositions;
+
+        Space(AvatarBuilder.Head head, long offset) {
+            this.head = head;
+            this.offset = offset;
+            AvatarBuilder template = new AvatarBuilder("", head, SKIN_COLORS[0], SKIN_COLORS[0]);
+            accessories = template.matchingAccessories().toArray(new AvatarBuilder.Accessory[0]);
+            accessoryPositions = positions(template.matchingAccessories(), AvatarBuilder.Accessory.values().length);
+            clothes = template.matchingClothes().toArray(new AvatarBuilder.Clothes[0]);
+            clothesPositions = positions(template.matchingClothes(), AvatarBuilder.Clothes.values().length);
+            glasses = template.matchingGlasses().toArray(new AvatarBuilder.Glasses[0]);
+            glassesPositions = positions(template.matchingGlasses(), AvatarBuilder.Glasses.values().length);
+            facialHair = template.matchingFacialHair().toArray(new AvatarBuilder.FacialHair[0]);
+            facialHairPositions = positions(template.matchingFacialHair(),
+                    AvatarBuilder.FacialHair.values().length);
+            hair = template.matchingHair().toArray(new AvatarBuilder.Hair[0]);
+            hairPositions = positions(template.matchingHair(), AvatarBuilder.Hair.values().length);
+            lipColors = template.matchingLipColor().toArray(new AvatarBuilder.LipColor[0]);
+            lipColorPositions = positions(template.matchingLipColor(), AvatarBuilder.LipColor.values().length);
+            long count = accessories.length;
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, clothes.length);
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, EYES.length);
+            count = Math.multiplyExact(count, EYES_COLORS.length);
+            count = Math.multiplyExact(count, glasses.length);
+            count = Math.multiplyExact(count, COLORS.length);
+            count = Math.multiplyExact(count, facialHair.length);
+            count = Math.multiplyExact(count, HAIR_COLORS.length);
+            count = Math.multiplyExact(count, hair.length);
+            count = Math.multiplyExact(count, HAIR_COLORS.length);
+            count = Math.multiplyExact(count, MOUTHS.length);
+            count = Math.multiplyExact(count, lipColors.length);
+            count = Math.multiplyExact(count, SKIN_COLORS.length);
+            count = Math.multiplyExact(count, SKIN_COLORS.length);
+            this.count = count;
+        }
+
+        private static int[] positions(List<? extends Enum<?>> options, int size) {
+            int[] positions = new int[size];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < options.size(); i++) {
+                positions[options.get(i).ordinal()] = i;
+            }
+            return positions;
+        }
+    }
+}
@@ -0,0 +1,745 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Renders {@link AvatarBuilder} instances to SVG. A renderer is immutable and thread-safe, so a single instance can be
+ * shared by the whole application.
+ * <p>
+ * Each attribute of the avatar is read exactly once per render, and the render itself is a single pass over
+ * precompiled templates into a buffer that is reused by each thread, so the only garbage produced by rendering is the
+ * final output.
+ */
+public final class AvatarRenderer {
+    static final AvatarRenderer DEFAULT = new AvatarRenderer(TemplateSet.classpath());
+    // the layers of an avatar, in the order that they are drawn
+    static final int BACKGROUND_LAYER = 0;
+    static final int HEAD_LAYER = 1;
+    static final int MOUTH_LAYER = 2;
+    static final int NOSE_LAYER = 3;
+    static final int EYES_LAYER = 4;
+    static final int HAIR_LAYER = 5;
+    static final int GLASSES_LAYER = 6;
+    static final int CLOTHES_LAYER = 7;
+    static final int ACCESSORY_LAYER = 8;
+    static final int FACIAL_HAIR_LAYER = 9;
+    static final int LAYERS = 10;
+    static final int ALL_LAYERS = (1 << LAYERS) - 1;
+    private static final int BASE = Template.COLOR | Template.SHADE;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The bytes that do not need to be percent encoded in a data URI, the RFC 3986 unreserved characters and those
+     * reserved characters that have no special meaning in a data URI or in HTML and JSON strings.
+     */
+    private static final boolean[] URI_SAFE = new boolean[256];
+
+    static {
+        for (char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~!$()*+,;=:/?@".toCharArray()) {
+            URI_SAFE[c] = true;
+        }
+    }
+    @NonNull
+    private final Supplier<TemplateSet> templates;
+
+    /**
+     * Creates a renderer that uses the templates bundled with this library.
+     */
+    public AvatarRenderer() {
+        this(TemplateSet.classpath());
+    }
+
+    AvatarRenderer(@NonNull TemplateSet templates) {
+        Objects.requireNonNull(templates);
+        this.templates = () -> templates;
+    }
+
+    /**
+     * Creates a renderer whose templates can change, each render uses the template set that is current when it
+     * starts.
+     */
+    AvatarRenderer(@NonNull Supplier<TemplateSet> templates) {
+        this.templates = Objects.requireNonNull(templates);
+    }
+
+    /**
+     * Renders the avatar.
+     *
+     * @param avatar the avatar.
+     * @return the SVG.
+     */
+    @NonNull
+    public String render(@NonNull AvatarBuilder avatar) {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            return scratch.text.toString();
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar for display at a specific size. The SVG has an explicit {@code width} and {@code height} and
+     * small sizes use simplified templates, with no gradients and less precise paths, that are smaller to send and
+     * quicker to draw.
+     *
+     * @param avatar   the avatar.
+     * @param sizeHint the size, in pixels, that the avatar will be displayed at.
+     * @return the SVG.
+     */
+    @NonNull
+    public String render(@NonNull AvatarBuilder avatar, int sizeHint) {
+        Scratch scratch = renderToScratch(avatar, sizeHint);
+        try {
+            return scratch.text.toString();
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar.
+     *
+     * @param avatar the avatar.
+     * @param out    where to write the SVG.
+     * @throws IOException if the SVG could not be written.
+     */
+    public void render(@NonNull AvatarBuilder avatar, @NonNull Appendable out) throws IOException {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            if (out instanceof Writer) {
+                StringBuilder text = scratch.text;
+                char[] chars = scratch.chars;
+                for (int start = 0, length = text.length(); start < length; start += chars.length) {
+                    int end = Math.min(length, start + chars.length);
+                    text.getChars(start, end, chars, 0);
+                    ((Writer) out).write(chars, 0, end - start);
+                }
+            } else {
+                out.append(scratch.text);
+            }
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as UTF-8.
+     *
+     * @param avatar the avatar.
+     * @param out    where to write the SVG.
+     * @throws IOException if the SVG could not be written.
+     */
+    public void render(@NonNull AvatarBuilder avatar, @NonNull OutputStream out) throws IOException {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            int length = scratch.encode();
+            out.write(scratch.bytes, 0, length);
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as UTF-8.
+     *
+     * @param avatar the avatar.
+     * @return the SVG.
+     */
+    @NonNull
+    public byte[] renderBytes(@NonNull AvatarBuilder avatar) {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            int length = scratch.encode();
+            return Arrays.copyOf(scratch.bytes, length);
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as UTF-8 for display at a specific size.
+     *
+     * @param avatar   the avatar.
+     * @param sizeHint the size, in pixels, that the avatar will be displayed at.
+     * @return the SVG.
+     * @see #render(AvatarBuilder, int)
+     */
+    @NonNull
+    public byte[] renderBytes(@NonNull AvatarBuilder avatar, int sizeHint) {
+        Scratch scratch = renderToScratch(avatar, sizeHint);
+        try {
+            int length = scratch.encode();
+            return Arrays.copyOf(scratch.bytes, length);
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as a {@code data:} URI, suitable for inlining into HTML or JSON.
+     *
+     * @param avatar   the avatar.
+     * @param encoding how to encode the SVG.
+     * @return the URI.
+     */
+    @NonNull
+    public String renderDataUri(@NonNull AvatarBuilder avatar, @NonNull DataUriEncoding encoding) {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            // the SVG is almost entirely ASCII, so the length of the text is a good estimate of its UTF-8 length
+            int length = scratch.text.length();
+            AsciiBuilder out = new AsciiBuilder(encoding.prefix.length
+                    + (encoding == DataUriEncoding.BASE64 ? (length + 2) / 3 * 4 : length + (length >> 2)));
+            scratch.writeDataUri(encoding, out);
+            return out.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // AsciiBuilder does not throw IOException
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as a {@code data:} URI, encoding the SVG as it is written.
+     *
+     * @param avatar   the avatar.
+     * @param encoding how to encode the SVG.
+     * @param out      where to write the URI.
+     * @throws IOException if the URI could not be written.
+     */
+    public void renderDataUri(@NonNull AvatarBuilder avatar, @NonNull DataUriEncoding encoding,
+                              @NonNull Appendable out) throws IOException {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            char[] chars = scratch.asciiChars;
+            CharBuffer view = scratch.asciiView;
+            scratch.writeDataUri(encoding, (ascii, count) -> {
+                scratch.widenAscii(count);
+                if (out instanceof Writer) {
+                    ((Writer) out).write(chars, 0, count);
+                } else if (out instanceof StringBuilder) {
+                    ((StringBuilder) out).append(chars, 0, count);
+                } else {
+                    out.append(view, 0, count);
+                }
+            });
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar as an ASCII {@code data:} URI, encoding the SVG as it is written.
+     *
+     * @param avatar   the avatar.
+     * @param encoding how to encode the SVG.
+     * @param out      where to write the URI.
+     * @throws IOException if the URI could not be written.
+     */
+    public void renderDataUri(@NonNull AvatarBuilder avatar, @NonNull DataUriEncoding encoding,
+                              @NonNull OutputStream out) throws IOException {
+        Scratch scratch = renderToScratch(avatar);
+        try {
+            scratch.writeDataUri(encoding, (ascii, count) -> out.write(ascii, 0, count));
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Renders the avatar reusing previously rendered layers.
+     *
+     * @param avatar    the avatar.
+     * @param fragments the rendered layers, indexed by layer, entries for the dirty layers will be replaced.
+     * @param dirty     the bit mask of layers that need to be rendered.
+     * @return the SVG.
+     */
+    @NonNull
+    String render(@NonNull AvatarBuilder avatar, @NonNull String[] fragments, int dirty) {
+        TemplateSet templates = this.templates.get();
+        Scratch scratch = SCRATCH.get();
+        try {
+            StringBuilder out = scratch.text;
+            for (int layer = 0; layer < LAYERS; layer++) {
+                if ((dirty & (1 << layer)) != 0) {
+                    out.setLength(0);
+                    renderLayer(templates, layer, avatar, out);
+                    fragments[layer] = out.toString();
+                }
+            }
+            return renderToScratch(templates, avatar, fragments, 0).text.toString();
+        } finally {
+            scratch.trim();
+        }
+    }
+
+    /**
+     * Returns the number of chars and bytes held between renders by the growable scratch buffers of the current
+     * thread.
+     */
+    static long retainedScratch() {
+        return SCRATCH.get().retained();
+    }
+
+    private Scratch renderToScratch(AvatarBuilder avatar) {
+        return renderToScratch(templates.get(), avatar, null, 0);
+    }
+
+    private Scratch renderToScratch(AvatarBuilder avatar, int sizeHint) {
+        if (sizeHint < 1) {
+            throw new IllegalArgumentException("sizeHint must be positive: " + sizeHint);
+        }
+        TemplateSet templates = this.templates.get();
+        if (sizeHint <= LevelOfDetail.LOW_DETAIL_MAX_SIZE) {
+            templates = templates.lowDetail();
+        }
+        return renderToScratch(templates, avatar, null, sizeHint);
+    }
+
+    /**
+     * Renders the avatar into the scratch buffer of the current thread.
+     *
+     * @param size the value of the {@code width} and {@code height} attributes, or {@code 0} to omit them.
+     */
+    private static Scratch renderToScratch(TemplateSet templates, AvatarBuilder avatar,
+                                           @CheckForNull String[] fragments, int size) {
+        Scratch scratch = SCRATCH.get();
+        StringBuilder out = scratch.text;
+        out.setLength(0);
+        Template document = templates.avatar;
+        for (int i = 0; i < document.slots.length; i++) {
+            out.append(document.literals[i]);
+            Template.Slot slot = document.slots[i];
+            switch (slot.kind) {
+                case Template.NAME:
+                    appendEscaped(out, avatar.getName());
+                    break;
+                case Template.SIZE:
+                    if (size > 0) {
+                        out.append("width=\"").append(size).append("\" height=\"").append(size).append('"');
+                    }
+                    break;
+                case Template.COMPONENTS:
+                    for (int layer = 0; layer < LAYERS; layer++) {
+                        if (fragments == null) {
+                            renderLayer(templates, layer, avatar, out);
+                        } else {
+                            out.append(fragments[layer]);
+                        }
+                    }
+                    break;
+                default:
+                    out.append(slot.raw);
+                    break;
+            }
+        }
+        out.append(document.literals[document.slots.length]);
+        return scratch;
+    }
+
+    /**
+     * Appends text with the XML special characters escaped. Characters that are not allowed in an XML document at all
+     * are replaced with {@code U+FFFD}.
+     */
+    static void appendEscaped(@NonNull StringBuilder out, @NonNull String text) {
+        int length = text.length();
+        int start = 0;
+        while (start < length && !isSpecial(text.charAt(start))) {
+            start++;
+        }
+        if (start == length) {
+            // the common case, nothing to escape
+            out.append(text);
+            return;
+        }
+        out.append(text, 0, start);
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (!isSpecial(c)) {
+                out.append(c);
+                continue;
+            }
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&apos;");
+                    break;
+                default:
+                    out.append('\uFFFD');
+                    break;
+            }
+        }
+    }
+
+    private static boolean isSpecial(char c) {
+        switch (c) {
+            case '&':
+            case '<':
+            case '>':
+            case '"':
+            case '\'':
+                return true;
+            case '\t':
+            case '\n':
+            case '\r':
+                return false;
+            default:
+                return c < 0x20 || c == '\uFFFE' || c == '\uFFFF';
+        }
+    }
+
+    private static void renderLayer(TemplateSet templates, int layer, AvatarBuilder avatar, StringBuilder out) {
+        switch (layer) {
+            case BACKGROUND_LAYER:
+                Palette.Swatch backgroundColor = avatar.getBackgroundSwatch();
+                if (backgroundColor != null) {
+                    templates.background.render(out, backgroundColor.paint(),
+                            avatar.getBackgroundSecondarySwatch().paint().color(), BASE | Template.SECONDARY_COLOR,
+                            null, 0);
+                }
+                break;
+            case HEAD_LAYER:
+                templates.heads[avatar.getHead().ordinal()]
+                        .render(out, avatar.getSkinColor().paint(), null, BASE, null, 0);
+                break;
+            case MOUTH_LAYER:
+                templates.mouths[avatar.getMouth().ordinal()]
+                        .render(out, avatar.getMouthColor().paint(), null, BASE, null, 0);
+                break;
+            case NOSE_LAYER:
+                templates.nose.render(out, avatar.getNoseColor().paint(), null, BASE, null, 0);
+                break;
+            case EYES_LAYER:
+                Paint eyesPaint = avatar.getEyesColor().paint();
+                templates.eyesFrame.render(out, eyesPaint, eyesPaint.eyesSecondary(),
+                        BASE | Template.SECONDARY_COLOR | Template.GRADIENT_ID | Template.COMPONENT,
+                        templates.eyes[avatar.getEyes().ordinal()],
+                        BASE | Template.SECONDARY_COLOR | Template.GRADIENT_URL);
+                break;
+            case HAIR_LAYER:
+                AvatarBuilder.Hair hair = avatar.getHair();
+                if (hair != null) {
+                    templates.hairFrame(hair).render(out, avatar.getHairColor().paint(), null,
+                            BASE | Template.COMPONENT, templates.hair[hair.ordinal()], BASE);
+                }
+                break;
+            case GLASSES_LAYER:
+                AvatarBuilder.Glasses glasses = avatar.getGlasses();
+                if (glasses != null) {
+                    templates.glasses[glasses.ordinal()]
+                            .render(out, avatar.getGlassesSwatch().paint(), null, BASE, null, 0);
+                }
+                break;
+            case CLOTHES_LAYER:
+                AvatarBuilder.Clothes clothes = avatar.getClothes();
+                if (clothes != null) {
+                    templates.clothes[clothes.ordinal()].render(out, avatar.getClothesSwatch().paint(),
+                            avatar.getClothesSecondarySwatch().paint().color(), BASE | Template.SECONDARY_COLOR,
+                            null, 0);
+                }
+                break;
+            case ACCESSORY_LAYER:
+                AvatarBuilder.Accessory accessory = avatar.getAccessory();
+                if (accessory != null) {
+                    templates.accessories[accessory.ordinal()]
+                            .render(out, avatar.getAccessorySwatch().paint(), null, BASE, null, 0);
+                }
+                break;
+            case FACIAL_HAIR_LAYER:
+                AvatarBuilder.FacialHair facialHair = avatar.getFacialHair();
+                if (facialHair != null) {
+                    templates.facialHair[facialHair.ordinal()]
+                            .render(out, avatar.getFacialHairColor().paint(), null, BASE, null, 0);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown layer: " + layer);
+        }
+    }
+
+    /**
+     * How the SVG is encoded in a {@code data:} URI.
+     */
+    public enum DataUriEncoding {
+        /**
+         * Base64, the most compact encoding for SVGs with many non-ASCII characters and the most widely supported.
+         */
+        BASE64("data:image/svg+xml;base64,"),
+        /**
+         * Percent encoding, which is usually more compact than Base64 for SVG and compresses better.
+         */
+        PERCENT("data:image/svg+xml;charset=utf-8,");
+
+        @NonNull
+        private final byte[] prefix;
+
+        DataUriEncoding(@NonNull String prefix) {
+            this.prefix = prefix.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        void write(byte[] ascii, int count) throws IOException;
+    }
+
+    /**
+     * Collects ASCII chunks into a string with a single copy.
+     */
+    private static final class AsciiBuilder implements ChunkWriter {
+        private byte[] ascii;
+        private int length;
+
+        AsciiBuilder(int capacity) {
+            ascii = new byte[capacity];
+        }
+
+        @Override
+        public void write(byte[] ascii, int count) {
+            if (length + count > this.ascii.length) {
+                this.ascii = Arrays.copyOf(this.ascii, Math.max(length + count, this.ascii.length * 2));
+            }
+            System.arraycopy(ascii, 0, this.ascii, length, count);
+            length += count;
+        }
+
+        @Override
+        public String toString() {
+            return new String(ascii, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * The buffers used by a thread while rendering.
+     */
+    private static final class Scratch {
+        /**
+         * The initial size of the growable buffers, enough for any full detail avatar with a typical name, which
+         * render to at most 15K chars and as many UTF-8 bytes.
+         */
+        private static final int INITIAL_SIZE = 16384;
+        /**
+         * Text buffers that have grown beyond this many chars are dropped after use, so that rendering an outlier, such
+         * as an avatar with a huge name, costs garbage once rather than memory for the life of the thread.
+         */
+        private static final int MAX_RETAINED_CHARS = 65536;
+        /**
+         * Byte buffers that have grown beyond this many bytes are dropped after use. The SVG is almost entirely ASCII,
+         * so the UTF-8 of a retained text buffer fits.
+         */
+        private static final int MAX_RETAINED_BYTES = 65536;
+        private StringBuilder text = new StringBuilder(INITIAL_SIZE);
+        private final char[] chars = new char[4096];
+        private final byte[] ascii = new byte[4096];
+        private final ByteBuffer asciiIn = ByteBuffer.wrap(ascii);
+        /**
+         * {@link #ascii} as chars, for writing to an {@link Appendable}.
+         */
+        private final char[] asciiChars = new char[4096];
+        private final CharBuffer asciiView = CharBuffer.wrap(asciiChars);
+        private final CharsetDecoder latin1 = StandardCharsets.ISO_8859_1.newDecoder();
+        private final CharBuffer charsIn = CharBuffer.wrap(chars);
+        /**
+         * The input to Base64 encoding, sized so that each chunk exactly fills {@link #ascii}.
+         */
+        private final byte[] chunk = new byte[3072];
+        /**
+         * The UTF-8 of the text being encoded as a data URI. The encoder only stops when the next char does not fit,
+         * so with room for a whole chunk and all but one byte of the longest char, it only stops with a whole chunk.
+         */
+        private final byte[] utf8Chunk = new byte[3072 + 3];
+        private final ByteBuffer utf8Out = ByteBuffer.wrap(utf8Chunk);
+        private byte[] bytes = new byte[INITIAL_SIZE];
+        private char[] utf16 = new char[INITIAL_SIZE];
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /**
+         * Encodes the rendered text as UTF-8, replacing unpaired surrogates with {@code '?'} as
+         * {@link String#getBytes(java.nio.charset.Charset)} does.
+         *
+         * @return the number of bytes of {@link #bytes} that were used.
+         */
+        int encode() {
+            StringBuilder text = this.text;
+            int length = text.length();
+            if (utf16.length < length) {
+                utf16 = new char[length];
+            }
+            // every char is at least one byte, and the SVG is almost entirely ASCII so usually no more
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            // the JDK encoder has an intrinsic fast path for ASCII, but only for arrays
+            text.getChars(0, length, utf16, 0);
+            CharBuffer in = CharBuffer.wrap(utf16, 0, length);
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            utf8.reset();
+            while (utf8.encode(in, out, true).isOverflow()) {
+                int position = out.position();
+                bytes = Arrays.copyOf(bytes, position + utf8Length(utf16, in.position(), length));
+                out = ByteBuffer.wrap(bytes);
+                out.position(position);
+            }
+            utf8.flush(out);
+            return out.position();
+        }
+
+        /**
+         * Encodes the rendered text as a data URI, converting it to UTF-8 a chunk at a time rather than all at once.
+         *
+         * @param out receives the URI in chunks of {@link #ascii}.
+         */
+        void writeDataUri(@NonNull DataUriEncoding encoding, @NonNull ChunkWriter out) throws IOException {
+            System.arraycopy(encoding.prefix, 0, ascii, 0, encoding.prefix.length);
+            out.write(ascii, encoding.prefix.length);
+            StringBuilder text = this.text;
+            int length = text.length();
+            CharBuffer in = charsIn;
+            in.clear();
+            utf8Out.clear();
+            utf8.reset();
+            boolean last;
+            int start = 0;
+            do {
+                // a surrogate that ends one chunk is left in the buffer by the encoder to pair up with the next
+                int count = Math.min(in.remaining(), length - start);
+                text.getChars(start, start + count, chars, in.position());
+                in.position(in.position() + count);
+                start += count;
+                last = start == length;
+                in.flip();
+                while (utf8.encode(in, utf8Out, last).isOverflow()) {
+                    writeUtf8(encoding, out, false);
+                }
+                in.compact();
+            } while (!last);
+            utf8.flush(utf8Out);
+            writeUtf8(encoding, out, true);
+        }
+
+        /**
+         * Encodes the UTF-8 in {@link #utf8Out}, keeping back any bytes short of a whole Base64 chunk unless they are
+         * the last.
+         */
+        private void writeUtf8(DataUriEncoding encoding, ChunkWriter out, boolean last) throws IOException {
+            byte[] bytes = utf8Chunk;
+            byte[] ascii = this.ascii;
+            int length = utf8Out.position();
+            int offset = 0;
+            switch (encoding) {
+                case BASE64:
+                    // the JDK encoder is intrinsified, but only encodes whole arrays, so encode a chunk at a time
+                    Base64.Encoder encoder = Base64.getEncoder();
+                    while (length - offset >= chunk.length || last && offset < length) {
+                        int count = Math.min(chunk.length, length - offset);
+                        byte[] source = count == chunk.length ? chunk : new byte[count];
+                        System.arraycopy(bytes, offset, source, 0, count);
+                        out.write(ascii, encoder.encode(source, ascii));
+                        offset += count;
+                    }
+                    break;
+                case PERCENT:
+                    int count = 0;
+                    for (; offset < length; offset++) {
+                        if (count + 3 > ascii.length) {
+                            out.write(ascii, count);
+                            count = 0;
+                        }
+                        int b = bytes[offset] & 0xff;
+                        if (URI_SAFE[b]) {
+                            ascii[count++] = (byte) b;
+                        } else {
+                            ascii[count++] = '%';
+                            ascii[count++] = HEX[b >> 4];
+                            ascii[count++] = HEX[b & 0x0f];
+                        }
+                    }
+                    out.write(ascii, count);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported encoding " + encoding);
+            }
+            System.arraycopy(bytes, offset, bytes, 0, length - offset);
+            utf8Out.clear();
+            utf8Out.position(length - offset);
+        }
+
+        /**
+         * Copies the first bytes of {@link #ascii} into {@link #asciiChars}, using the JDK decoder as it is
+         * intrinsified.
+         */
+        void widenAscii(int count) {
+            asciiIn.clear();
+            asciiIn.limit(count);
+            asciiView.clear();
+            latin1.reset();
+            latin1.decode(asciiIn, asciiView, true);
+            asciiView.flip();
+        }
+
+        /**
+         * Returns the UTF-8 length of some chars, which is exact unless an unpaired surrogate is replaced.
+         */
+        private static int utf8Length(char[] chars, int from, int to) {
+            int length = to - from;
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c >= 0x80) {
+                    // each half of a surrogate pair adds one byte to make four
+                    length += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Drops any buffer that has grown beyond {@link #MAX_RETAINED_CHARS} or {@link #MAX_RETAINED_BYTES}.
+         */
+        void trim() {
+            if (text.capacity() > MAX_RETAINED_CHARS) {
+                text = new StringBuilder(INITIAL_SIZE);
+            }
+            if (bytes.length > MAX_RETAINED_BYTES) {
+                bytes = new byte[INITIAL_SIZE];
+            }
+            if (utf16.length > MAX_RETAINED_CHARS) {
+                utf16 = new char[INITIAL_SIZE];
+            }
+        }
+
+        /**
+         * Returns the number of chars and bytes held by the growable buffers.
+         */
+        long retained() {
+            return text.capacity() + bytes.length + utf16.length;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * A compact, URL-safe token that captures every attribute of an avatar, so that a URL can carry the complete
+ * specification of an avatar and any node can render it without a lookup.
+ * <p>
+ * Tokens are always {@value #LENGTH} characters from {@code [0-9A-Za-z]}. Each token is a base62 number whose digits
+ * are, from most to least significant: head, skin colour, nose colour, accessory, accessory colour, background
+ * colour, background secondary colour, clothes, clothes colour, clothes secondary colour, eyes, eyes colour, glasses,
+ * glasses colour, facial hair, facial hair colour, hair, hair colour, mouth, mouth colour, a version nibble and a 16
+ * bit checksum. Unlike {@link AvatarIndex}, any combination of attributes can be encoded, including absent layers and
+ * attributes that do not match the head.
+ * <p>
+ * The name is not part of the token, as it is free text. Carry it separately, e.g. as another path segment.
+ * <p>
+ * The radix of each digit is fixed for a given version, so a token will always decode to the same avatar. Attributes
+ * added to the enums later need a new version.
+ */
+public final class AvatarToken {
+    /**
+     * The length of every token.
+     */
+    public static final int LENGTH = 15;
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int VERSION = 1;
+    private static final int VERSIONS = 16;
+    private static final int CHECKSUMS = 1 << 16;
+    /**
+     * Enough 32-bit limbs for {@code 62^LENGTH}.
+     */
+    private static final int LIMBS = 3;
+    private static final int HEADS = 2;
+    private static final int SKIN_COLORS = 6;
+    private static final int ACCESSORIES = 4;
+    private static final int COLORS = 23;
+    private static final int CLOTHES = 12;
+    private static final int EYES = 4;
+    private static final int EYES_COLORS = 6;
+    private static final int GLASSES = 6;
+    private static final int FACIAL_HAIR = 5;
+    private static final int HAIR = 14;
+    private static final int HAIR_COLORS = 22;
+    private static final int MOUTHS = 4;
+    private static final int LIP_COLORS = 21;
+    private static final AvatarBuilder.Head[] HEAD_VALUES = AvatarBuilder.Head.values();
+    private static final AvatarBuilder.SkinColor[] SKIN_COLOR_VALUES = AvatarBuilder.SkinColor.values();
+    private static final AvatarBuilder.Accessory[] ACCESSORY_VALUES = AvatarBuilder.Accessory.values();
+    private static final AvatarBuilder.Color[] COLOR_VALUES = AvatarBuilder.Color.values();
+    private static final AvatarBuilder.Clothes[] CLOTHES_VALUES = AvatarBuilder.Clothes.values();
+    private static final AvatarBuilder.Eyes[] EYES_VALUES = AvatarBuilder.Eyes.values();
+    private static final AvatarBuilder.EyesColor[] EYES_COLOR_VALUES = AvatarBuilder.EyesColor.values();
+    private static final AvatarBuilder.Glasses[] GLASSES_VALUES = AvatarBuilder.Glasses.values();
+    private static final AvatarBuilder.FacialHair[] FACIAL_HAIR_VALUES = AvatarBuilder.FacialHair.values();
+    private static final AvatarBuilder.Hair[] HAIR_VALUES = AvatarBuilder.Hair.values();
+    private static final AvatarBuilder.HairColor[] HAIR_COLOR_VALUES = AvatarBuilder.HairColor.values();
+    private static final AvatarBuilder.Mouth[] MOUTH_VALUES = AvatarBuilder.Mouth.values();
+    private static final AvatarBuilder.LipColor[] LIP_COLOR_VALUES = AvatarBuilder.LipColor.values();
+
+    private AvatarToken() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Returns the token of an avatar.
+     *
+     * @param avatar the avatar.
+     * @return the token.
+     * @throws IllegalArgumentException if the avatar uses a colour that is not {@link Palette.Swatch#isBuiltIn()
+     *                                  built-in}, as registered colours are not the same on every node.
+     */
+    @NonNull
+    public static String encode(@NonNull AvatarBuilder avatar) {
+        int[] value = new int[LIMBS];
+        push(value, HEADS, digit(avatar.getHead(), HEADS, "head"));
+        push(value, SKIN_COLORS, digit(avatar.getSkinColor(), SKIN_COLORS, "skin color"));
+        push(value, SKIN_COLORS, digit(avatar.getNoseColor(), SKIN_COLORS, "nose color"));
+        push(value, ACCESSORIES + 1, optionalDigit(avatar.getAccessory(), ACCESSORIES, "accessory"));
+        push(value, COLORS, digit(avatar.getAccessorySwatch(), "accessory color"));
+        push(value, COLORS + 1, optionalDigit(avatar.getBackgroundSwatch(), "background color"));
+        push(value, COLORS, digit(avatar.getBackgroundSecondarySwatch(), "background secondary color"));
+        push(value, CLOTHES + 1, optionalDigit(avatar.getClothes(), CLOTHES, "clothes"));
+        push(value, COLORS, digit(avatar.getClothesSwatch(), "clothes color"));
+        push(value, COLORS, digit(avatar.getClothesSecondarySwatch(), "clothes secondary color"));
+        push(value, EYES, digit(avatar.getEyes(), EYES, "eyes"));
+        push(value, EYES_COLORS, digit(avatar.getEyesColor(), EYES_COLORS, "eyes color"));
+        push(value, GLASSES + 1, optionalDigit(avatar.getGlasses(), GLASSES, "glasses"));
+        push(value, COLORS, digit(avatar.getGlassesSwatch(), "glasses color"));
+        push(value, FACIAL_HAIR + 1, optionalDigit(avatar.getFacialHair(), FACIAL_HAIR, "facial hair"));
+        push(value, HAIR_COLORS, digit(avatar.getFacialHairColor(), HAIR_COLORS, "facial hair color"));
+        push(value, HAIR + 1, optionalDigit(avatar.getHair(), HAIR, "hair"));
+        push(value, HAIR_COLORS, digit(avatar.getHairColor(), HAIR_COLORS, "hair color"));
+        push(value, MOUTHS, digit(avatar.getMouth(), MOUTHS, "mouth"));
+        push(value, LIP_COLORS, digit(avatar.getMouthColor(), LIP_COLORS, "mouth color"));
+        push(value, VERSIONS, VERSION);
+        push(value, CHECKSUMS, checksum(value));
+        char[] token = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            token[i] = ALPHABET.charAt(pop(value, ALPHABET.length()));
+        }
+        return new String(token);
+    }
+
+    /**
+     * Returns the avatar of a token.
+     *
+     * @param name  the name of the avatar.
+     * @param token the token.
+     * @return the avatar.
+     * @throws IllegalArgumentException if the token is malformed, has been corrupted or is from an unsupported version.
+     */
+    @NonNull
+    public static AvatarBuilder decode(@NonNull String name, @NonNull String token) {
+        if (token.length() != LENGTH) {
+            throw new IllegalArgumentException("Tokens are " + LENGTH + " characters, not " + token.length());
+        }
+        int[] value = new int[LIMBS];
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = ALPHABET.indexOf(token.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Tokens cannot contain '" + token.charAt(i) + "'");
+            }
+            push(value, ALPHABET.length(), digit);
+        }
+        if (pop(value, CHECKSUMS) != checksum(value)) {
+            throw new IllegalArgumentException("The token " + token + " is corrupt");
+        }
+        int version = pop(value, VERSIONS);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("The token " + token + " is from unsupported version " + version);
+        }
+        AvatarBuilder.LipColor mouthColor = LIP_COLOR_VALUES[pop(value, LIP_COLORS)];
+        AvatarBuilder.Mouth mouth = MOUTH_VALUES[pop(value, MOUTHS)];
+        AvatarBuilder.HairColor hairColor = HAIR_COLOR_VALUES[pop(value, HAIR_COLORS)];
+        AvatarBuilder.Hair hair = optional(HAIR_VALUES, pop(value, HAIR + 1));
+        AvatarBuilder.HairColor facialHairColor = HAIR_COLOR_VALUES[pop(value, HAIR_COLORS)];
+        AvatarBuilder.FacialHair facialHair = optional(FACIAL_HAIR_VALUES, pop(value, FACIAL_HAIR + 1));
+        AvatarBuilder.Color glassesColor = COLOR_VALUES[pop(value, COLORS)];
+        AvatarBuilder.Glasses glasses = optional(GLASSES_VALUES, pop(value, GLASSES + 1));
+        AvatarBuilder.EyesColor eyesColor = EYES_COLOR_VALUES[pop(value, EYES_COLORS)];
+        AvatarBuilder.Eyes eyes = EYES_VALUES[pop(value, EYES)];
+        AvatarBuilder.Color clothesSecondaryColor = COLOR_VALUES[pop(value, COLORS)];
+        AvatarBuilder.Color clothesColor = COLOR_VALUES[pop(value, COLORS)];
+        AvatarBuilder.Clothes clothes = optional(CLOTHES_VALUES, pop(value, CLOTHES + 1));
+        AvatarBuilder.Color backgroundSecondaryColor = COLOR_VALUES[pop(value, COLORS)];
+        AvatarBuilder.Color backgroundColor = optional(COLOR_VALUES, pop(value, COLORS + 1));
+        AvatarBuilder.Color accessoryColor = COLOR_VALUES[pop(value, COLORS)];
+        AvatarBuilder.Accessory accessory = optional(ACCESSORY_VALUES, pop(value, ACCESSORIES + 1));
+        AvatarBuilder.SkinColor noseColor = SKIN_COLOR_VALUES[pop(value, SKIN_COLORS)];
+        AvatarBuilder.SkinColor skinColor = SKIN_COLOR_VALUES[pop(value, SKIN_COLORS)];
+        AvatarBuilder.Head head = HEAD_VALUES[pop(value, HEADS)];
+        for (int limb : value) {
+            if (limb != 0) {
+                throw new IllegalArgumentException("The token " + token + " is out of range");
+            }
+        }
+        return new AvatarBuilder(name, head, skinColor, noseColor)
+                .accessory(accessory, accessoryColor)
+                .background(backgroundColor, backgroundSecondaryColor)
+                .clothes(clothes, clothesColor, clothesSecondaryColor)
+                .eyes(eyes, eyesColor)
+                .glasses(glasses, glassesColor)
+                .facialHair(facialHair, facialHairColor)
+                .hair(hair, hairColor)
+                .mouth(mouth, mouthColor);
+    }
+
+    private static int digit(@NonNull Enum<?> value, int radix, String attribute) {
+        if (value.ordinal() >= radix) {
+            throw new IllegalArgumentException("The " + attribute + " " + value + " needs a newer token version");
+        }
+        return value.ordinal();
+    }
+
+    private static int optionalDigit(@CheckForNull Enum<?> value, int radix, String attribute) {
+        return value == null ? 0 : digit(value, radix, attribute) + 1;
+    }
+
+    private static int digit(@NonNull Palette.Swatch color, String attribute) {
+        AvatarBuilder.Color builtIn = color.getColor();
+        if (builtIn == null) {
+            throw new IllegalArgumentException("The " + attribute + " " + color + " is not a built-in color");
+        }
+        return digit(builtIn, COLORS, attribute);
+    }
+
+    private static int optionalDigit(@CheckForNull Palette.Swatch color, String attribute) {
+        return color == null ? 0 : digit(color, attribute) + 1;
+    }
+
+    @CheckForNull
+    private static <T> T optional(T[] values, int digit) {
+        return digit == 0 ? null : values[digit - 1];
+    }
+
+    /**
+     * Multiplies the big-endian unsigned value by the radix and adds the digit.
+     */
+    private static void push(int[] value, int radix, int digit) {
+        long carry = digit;
+        for (int i = value.length - 1; i >= 0; i--) {
+            long x = (value[i] & 0xffffffffL) * radix + carry;
+            value[i] = (int) x;
+            carry = x >>> 32;
+        }
+    }
+
+    /**
+     * Divides the big-endian unsigned value by the radix and returns the remainder.
+     */
+    private static int pop(int[] value, int radix) {
+        long remainder = 0;
+        for (int i = 0; i < value.length; i++) {
+            long x = (remainder << 32) | (value[i] & 0xffffffffL);
+            value[i] = (int) (x / radix);
+            remainder = x % radix;
+        }
+        return (int) remainder;
+    }
+
+    private static int checksum(int[] value) {
+        long hash = 0x9e3779b97f4a7c15L;
+        for (int limb : value) {
+            // SplitMix64 finalizer
+            hash = (hash ^ (limb & 0xffffffffL)) * 0xbf58476d1ce4e5b9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+            hash ^= hash >>> 31;
+        }
+        return (int) (hash >>> 48);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Derives the low detail variant of a template, for avatars that will be displayed at a small size where the fine
+ * detail cannot be seen anyway.
+ * <p>
+ * The low detail variant has no gradients (gradient fills become the flat primary colour), no {@code id} or
+ * {@code data-name} attributes, path data rounded to one decimal place and no redundant whitespace. Every path is
+ * kept, as the templates do not distinguish highlights from features drawn in a lighter shade, such as moustaches.
+ */
+final class LevelOfDetail {
+    /**
+     * Avatars displayed at this size or smaller, in pixels, use the low detail templates.
+     */
+    static final int LOW_DETAIL_MAX_SIZE = 48;
+    private static final Pattern GRADIENT = Pattern.compile("<linearGradient\\b.*?</linearGradient>", Pattern.DOTALL);
+    private static final Pattern GRADIENT_FILL = Pattern.compile("url\\(#Background\\)|\\{\\{gradientUrl}}");
+    private static final Pattern NAMES = Pattern.compile("\\s(?:id|data-name)=\"[^\"]*\"");
+    private static final Pattern COORDINATES = Pattern.compile("(\\s(?:d|transform)=\")([^\"]*)\"");
+    private static final Pattern NUMBER = Pattern.compile("-?(?:\\d+\\.\\d*|\\.\\d+)");
+    private static final Pattern BETWEEN_TAGS = Pattern.compile(">\\s+<");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private LevelOfDetail() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Simplifies the source of a template.
+     *
+     * @param source the full detail template source.
+     * @return the low detail template source.
+     */
+    @NonNull
+    static String simplify(@NonNull String source) {
+        String result = GRADIENT.matcher(source).replaceAll("");
+        result = GRADIENT_FILL.matcher(result).replaceAll("{{color}}");
+        result = NAMES.matcher(result).replaceAll("");
+        result = roundCoordinates(result);
+        result = BETWEEN_TAGS.matcher(result).replaceAll("><");
+        return WHITESPACE.matcher(result).replaceAll(" ").trim();
+    }
+
+    private static String roundCoordinates(String source) {
+        Matcher attribute = COORDINATES.matcher(source);
+        StringBuilder out = new StringBuilder(source.length());
+        int current = 0;
+        while (attribute.find()) {
+            out.append(source, current, attribute.end(1));
+            String value = attribute.group(2);
+            Matcher number = NUMBER.matcher(value);
+            int valueCurrent = 0;
+            while (number.find()) {
+                out.append(value, valueCurrent, number.start());
+                String rounded = round(number.group());
+                char last = out.charAt(out.length() - 1);
+                if ((Character.isDigit(last) || last == '.') && rounded.charAt(0) != '-') {
+                    // the original relied on the decimal point to separate the numbers, and this one may have lost it
+                    out.append(',');
+                }
+                out.append(rounded);
+                valueCurrent = number.end();
+            }
+            out.append(value, valueCurrent, value.length()).append('"');
+            current = attribute.end();
+        }
+        return out.append(source, current, source.length()).toString();
+    }
+
+    private static String round(String number) {
+        long tenths = Math.round(Double.parseDouble(number) * 10);
+        if (tenths == 0) {
+            return "0";
+        }
+        StringBuilder out = new StringBuilder();
+        if (tenths < 0) {
+            out.append('-');
+            tenths = -tenths;
+        }
+        if (tenths >= 10) {
+            out.append(tenths / 10);
+        }
+        if (tenths % 10 != 0) {
+            out.append('.').append(tenths % 10);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives the seed from which the attributes of a named avatar are picked.
+ * <p>
+ * Rather than looking up the provider and hashing the salt for every name, this clones a digest that has already been
+ * primed with the salt.
+ */
+final class NameSeed {
+    private static final MessageDigest PRIMED = primed();
+
+    private NameSeed() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Returns the seed for a name.
+     *
+     * @param name the name of the avatar.
+     * @return the 32 byte seed.
+     */
+    @NonNull
+    static byte[] of(@NonNull String name) {
+        MessageDigest md;
+        try {
+            md = (MessageDigest) PRIMED.clone();
+        } catch (CloneNotSupportedException e) {
+            md = primed();
+        }
+        return md.digest(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest primed() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JLS mandates support for SHA-256, this is not a valid JVM", e);
+        }
+        md.update(new byte[] {3, 78, -123, -99});
+        return md;
+    }
+}
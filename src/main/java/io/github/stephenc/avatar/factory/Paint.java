@@ -0,0 +1,80 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * A colour together with the values derived from it by the templates, computed once and then shared by every render.
+ */
+final class Paint {
+    private static final Shade EYES_SECONDARY = Shade.darken(.15f);
+    @NonNull
+    private final String color;
+    @NonNull
+    private final String gradientId;
+    @NonNull
+    private final String gradientUrl;
+    @NonNull
+    private volatile String[] shades = new String[0];
+
+    Paint(@NonNull String color) {
+        this.color = color;
+        this.gradientId = color.replace('#', '_');
+        this.gradientUrl = "url(#" + gradientId + ")";
+    }
+
+    @NonNull
+    String color() {
+        return color;
+    }
+
+    @NonNull
+    String gradientId() {
+        return gradientId;
+    }
+
+    @NonNull
+    String gradientUrl() {
+        return gradientUrl;
+    }
+
+    /**
+     * The secondary colour of the eyes, which is derived from the primary colour.
+     */
+    @NonNull
+    String eyesSecondary() {
+        return shade(EYES_SECONDARY);
+    }
+
+    /**
+     * Computes every known shade of this colour ahead of time.
+     */
+    void precompute() {
+        for (Shade shade : Shade.all()) {
+            shade(shade);
+        }
+    }
+
+    @NonNull
+    String shade(@NonNull Shade shade) {
+        String[] shades = this.shades;
+        int index = shade.index();
+        if (index < shades.length && shades[index] != null) {
+            return shades[index];
+        }
+        return computeShade(shade);
+    }
+
+    private synchronized String computeShade(Shade shade) {
+        String[] shades = this.shades;
+        int index = shade.index();
+        if (index < shades.length && shades[index] != null) {
+            return shades[index];
+        }
+        String[] updated = new String[Math.max(shades.length, index + 1)];
+        System.arraycopy(shades, 0, updated, 0, shades.length);
+        String result = shade.apply(color);
+        updated[index] = result;
+        this.shades = updated;
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A named set of colours that can be used for the background, clothes, accessories and glasses of an avatar in place
+ * of the built-in {@link AvatarBuilder.Color} values.
+ * <p>
+ * Palettes are registered once, typically at application start-up, at which point every shade of each colour that
+ * the templates use is computed, so rendering with a registered colour costs the same as rendering with a built-in
+ * colour. Every registered colour is also assigned a compact global {@link Swatch#getIndex() index}.
+ */
+public final class Palette {
+    private static final Pattern HEX = Pattern.compile("#[0-9a-fA-F]{6}");
+    private static final Map<String, Palette> PALETTES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    @NonNull
+    private static volatile Swatch[] swatches = new Swatch[0];
+    /**
+     * The built-in colours, in the same order as {@link AvatarBuilder.Color#values()}.
+     */
+    public static final Palette BUILT_IN;
+
+    static {
+        Builder builder = builder("built-in");
+        for (AvatarBuilder.Color color : AvatarBuilder.Color.values()) {
+            builder.add(color.getName(), color.paint());
+        }
+        BUILT_IN = builder.register();
+    }
+
+    @NonNull
+    private final String name;
+    @NonNull
+    private final List<Swatch> colors;
+
+    private Palette(@NonNull String name, @NonNull List<Swatch> colors) {
+        this.name = name;
+        this.colors = colors;
+    }
+
+    /**
+     * Starts defining a new palette.
+     *
+     * @param name the unique name of the palette.
+     * @return the builder.
+     */
+    @NonNull
+    public static Builder builder(@NonNull String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Looks up a registered palette.
+     *
+     * @param name the name of the palette.
+     * @return the palette or {@code null} if there is no palette with that name.
+     */
+    @CheckForNull
+    public static Palette get(@NonNull String name) {
+        return PALETTES.get(name);
+    }
+
+    /**
+     * Looks up a registered colour by its global index.
+     *
+     * @param index the index.
+     * @return the colour.
+     * @throws IndexOutOfBoundsException if no colour has been registered with that index.
+     */
+    @NonNull
+    public static Swatch swatch(int index) {
+        Swatch[] swatches = Palette.swatches;
+        if (index < 0 || index >= swatches.length) {
+            throw new IndexOutOfBoundsException("No colour registered with index " + index);
+        }
+        return swatches[index];
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public List<Swatch> getColors() {
+        return colors;
+    }
+
+    /**
+     * Looks up a colour of this palette.
+     *
+     * @param name the name of the colour.
+     * @return the colour or {@code null} if this palette has no colour with that name.
+     */
+    @CheckForNull
+    public Swatch getColor(@NonNull String name) {
+        for (Swatch color : colors) {
+            if (color.name.equals(name)) {
+                return color;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Palette{" + name + "}";
+    }
+
+    /**
+     * Defines a palette.
+     */
+    public static final class Builder {
+        @NonNull
+        private final String name;
+        @NonNull
+        private final Map<String, Paint> colors = new LinkedHashMap<>();
+
+        private Builder(@NonNull String name) {
+            this.name = Objects.requireNonNull(name);
+        }
+
+        /**
+         * Adds a colour to the palette.
+         *
+         * @param name  the name of the colour, unique within the palette.
+         * @param color the colour in {@code #rrggbb} form.
+         * @return this builder.
+         */
+        @NonNull
+        public Builder add(@NonNull String name, @NonNull String color) {
+            if (!HEX.matcher(color).matches()) {
+                throw new IllegalArgumentException("Colours must be of the form #rrggbb: " + color);
+            }
+            return add(name, new Paint(color));
+        }
+
+        private Builder add(String name, Paint paint) {
+            if (colors.putIfAbsent(Objects.requireNonNull(name), paint) != null) {
+                throw new IllegalArgumentException("Duplicate colour " + name + " in palette " + this.name);
+            }
+            return this;
+        }
+
+        /**
+         * Registers the palette, precomputing every shade of its colours used by the templates.
+         *
+         * @return the palette.
+         * @throws IllegalArgumentException if a palette with the same name has already been registered.
+         */
+        @NonNull
+        public Palette register() {
+            if (colors.isEmpty()) {
+                throw new IllegalArgumentException("Palette " + name + " has no colours");
+            }
+            TemplateSet.classpath(); // ensures the shades used by the templates are known
+            synchronized (LOCK) {
+                if (PALETTES.containsKey(name)) {
+                    throw new IllegalArgumentException("Palette " + name + " is already registered");
+                }
+                Swatch[] existing = swatches;
+                Swatch[] updated = Arrays.copyOf(existing, existing.length + colors.size());
+                List<Swatch> entries = new ArrayList<>(colors.size());
+                Palette palette = new Palette(name, Collections.unmodifiableList(entries));
+                int index = existing.length;
+                for (Map.Entry<String, Paint> color : colors.entrySet()) {
+                    Paint paint = color.getValue();
+                    paint.precompute();
+                    Swatch swatch = new Swatch(palette, color.getKey(), index, paint);
+                    entries.add(swatch);
+                    updated[index++] = swatch;
+                }
+                swatches = updated;
+                PALETTES.put(name, palette);
+                return palette;
+            }
+        }
+    }
+
+    /**
+     * A colour of a {@link Palette}.
+     */
+    public static final class Swatch {
+        @NonNull
+        private final Palette palette;
+        @NonNull
+        private final String name;
+        private final int index;
+        @NonNull
+        private final Paint paint;
+
+        private Swatch(@NonNull Palette palette, @NonNull String name, int index, @NonNull Paint paint) {
+            this.palette = palette;
+            this.name = name;
+            this.index = index;
+            this.paint = paint;
+        }
+
+        @NonNull
+        public Palette getPalette() {
+            return palette;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the global index of this colour, which can be passed to {@link Palette#swatch(int)}.
+         *
+         * @return the global index of this colour.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the colour in {@code #rrggbb} form.
+         *
+         * @return the colour in {@code #rrggbb} form.
+         */
+        @NonNull
+        public String getHex() {
+            return paint.color();
+        }
+
+        /**
+         * Returns the built-in colour of a colour of the {@link Palette#BUILT_IN} palette. Other colours have no
+         * equivalent built-in colour, so use the swatch itself, such as with {@link #getHex()}.
+         *
+         * @return the built-in colour or {@code null} if this is not a {@link #isBuiltIn() built-in} colour.
+         */
+        @CheckForNull
+        public AvatarBuilder.Color getColor() {
+            // the built-in palette is registered first, so its indices are the ordinals
+            return isBuiltIn() ? AvatarBuilder.Color.values()[index] : null;
+        }
+
+        public boolean isBuiltIn() {
+            return palette == BUILT_IN;
+        }
+
+        @NonNull
+        Paint paint() {
+            return paint;
+        }
+
+        @Override
+        public String toString() {
+            return palette.name + "/" + name;
+        }
+    }
+}
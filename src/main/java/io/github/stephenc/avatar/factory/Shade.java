@@ -0,0 +1,78 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A lighten or darken operation referenced from a template, e.g. {@code {{darken(.15)}}}. Each distinct operation is
+ * assigned a small index so that {@link Paint} can cache its result in an array.
+ */
+final class Shade {
+    private static final List<Shade> SHADES = new ArrayList<>();
+    private final boolean lighten;
+    private final float ratio;
+    private final int index;
+
+    private Shade(boolean lighten, float ratio, int index) {
+        this.lighten = lighten;
+        this.ratio = ratio;
+        this.index = index;
+    }
+
+    @NonNull
+    static Shade lighten(float ratio) {
+        return of(true, ratio);
+    }
+
+    @NonNull
+    static Shade darken(float ratio) {
+        return of(false, ratio);
+    }
+
+    private static Shade of(boolean lighten, float ratio) {
+        synchronized (SHADES) {
+            for (Shade shade : SHADES) {
+                if (shade.lighten == lighten && Float.compare(shade.ratio, ratio) == 0) {
+                    return shade;
+                }
+            }
+            Shade shade = new Shade(lighten, ratio, SHADES.size());
+            SHADES.add(shade);
+            return shade;
+        }
+    }
+
+    /**
+     * Returns every shade referenced by the templates compiled so far.
+     */
+    @NonNull
+    static List<Shade> all() {
+        synchronized (SHADES) {
+            return new ArrayList<>(SHADES);
+        }
+    }
+
+    int index() {
+        return index;
+    }
+
+    @NonNull
+    String apply(@NonNull String color) {
+        return lighten ? lightenColor(color, ratio) : darkenColor(color, ratio);
+    }
+
+    private static String darkenColor(String color, float ratio) {
+        int r = Math.round(Integer.parseInt(color.substring(1, 3), 16) * (1 - ratio));
+        int g = Math.round(Integer.parseInt(color.substring(3, 5), 16) * (1 - ratio));
+        int b = Math.round(Integer.parseInt(color.substring(5, 7), 16) * (1 - ratio));
+        return String.format("#%02x%02x%02x", Math.max(0, r), Math.max(0, g), Math.max(0, b));
+    }
+
+    private static String lightenColor(String color, float ratio) {
+        int r = Math.round(Integer.parseInt(color.substring(1, 3), 16) * (1 + ratio));
+        int g = Math.round(Integer.parseInt(color.substring(3, 5), 16) * (1 + ratio));
+        int b = Math.round(Integer.parseInt(color.substring(5, 7), 16) * (1 + ratio));
+        return String.format("#%02x%02x%02x", Math.min(255, r), Math.min(255, g), Math.min(255, b));
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template that has been split into literal text and slots, so that rendering is a single pass of appends with no
+ * searching or parsing.
+ * <p>
+ * Each render states which kinds of slot it binds, any slot that is not bound is rendered verbatim.
+ */
+final class Template {
+    static final int UNKNOWN = 0;
+    static final int NAME = 1;
+    static final int COMPONENTS = 1 << 1;
+    static final int COMPONENT = 1 << 2;
+    static final int COLOR = 1 << 3;
+    static final int SHADE = 1 << 4;
+    static final int SECONDARY_COLOR = 1 << 5;
+    static final int GRADIENT_ID = 1 << 6;
+    static final int GRADIENT_URL = 1 << 7;
+    static final int SIZE = 1 << 8;
+
+    /**
+     * The literal text, there is always one more literal than there are slots.
+     */
+    @NonNull
+    final String[] literals;
+    @NonNull
+    final Slot[] slots;
+    /**
+     * The source of the template, from which variants such as the {@link LevelOfDetail low detail} template are
+     * derived.
+     */
+    @NonNull
+    final String source;
+
+    private Template(@NonNull String[] literals, @NonNull Slot[] slots, @NonNull String source) {
+        this.literals = literals;
+        this.slots = slots;
+        this.source = source;
+    }
+
+    @NonNull
+    static Template compile(@NonNull String template) {
+        List<String> literals = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        int current = 0;
+        int bindingStart;
+        while (-1 != (bindingStart = template.indexOf("{{", current))) {
+            int bindingEnd = template.indexOf("}}", bindingStart);
+            if (bindingEnd == -1) {
+                break;
+            }
+            literals.add(template.substring(current, bindingStart));
+            int argStart = template.indexOf('(', bindingStart);
+            String name;
+            String arg;
+            if (argStart != -1 && argStart < bindingEnd && template.charAt(bindingEnd - 1) == ')') {
+                // we have an argument
+                name = template.substring(bindingStart + 2, argStart);
+                arg = template.substring(argStart + 1, bindingEnd - 1);
+            } else {
+                name = template.substring(bindingStart + 2, bindingEnd);
+                arg = null;
+            }
+            slots.add(Slot.of(name, arg, template.substring(bindingStart, bindingEnd + 2)));
+            current = bindingEnd + 2;
+        }
+        literals.add(template.substring(current));
+        return new Template(literals.toArray(new String[0]), slots.toArray(new Slot[0]), template);
+    }
+
+    /**
+     * Renders this template as a layer of the avatar.
+     *
+     * @param out            where to render.
+     * @param paint          the colour of the layer.
+     * @param secondaryColor the secondary colour of the layer.
+     * @param bound          the kinds of slot that are bound.
+     * @param component      the template to render for the {@code component} slot.
+     * @param componentBound the kinds of slot that are bound when rendering the component.
+     */
+    void render(@NonNull StringBuilder out, @NonNull Paint paint, @CheckForNull String secondaryColor, int bound,
+                @CheckForNull Template component, int componentBound) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            Slot slot = slots[i];
+            switch (slot.kind & bound) {
+                case COLOR:
+                    out.append(paint.color());
+                    break;
+                case SHADE:
+                    out.append(paint.shade(slot.shade));
+                    break;
+                case SECONDARY_COLOR:
+                    out.append(secondaryColor);
+                    break;
+                case GRADIENT_ID:
+                    out.append(paint.gradientId());
+                    break;
+                case GRADIENT_URL:
+                    out.append(paint.gradientUrl());
+                    break;
+                case COMPONENT:
+                    if (component != null) {
+                        component.render(out, paint, secondaryColor, componentBound, null, 0);
+                        break;
+                    }
+                    // fall through
+                default:
+                    out.append(slot.raw);
+                    break;
+            }
+        }
+        out.append(literals[slots.length]);
+    }
+
+    static final class Slot {
+        final int kind;
+        @CheckForNull
+        final Shade shade;
+        @NonNull
+        final String raw;
+
+        private Slot(int kind, @CheckForNull Shade shade, @NonNull String raw) {
+            this.kind = kind;
+            this.shade = shade;
+            this.raw = raw;
+        }
+
+        static Slot of(String name, @CheckForNull String arg, String raw) {
+            switch (name) {
+                case "name":
+                    return new Slot(NAME, null, raw);
+                case "size":
+                    return new Slot(SIZE, null, raw);
+                case "components":
+                    return new Slot(COMPONENTS, null, raw);
+                case "component":
+                    return new Slot(COMPONENT, null, raw);
+                case "color":
+                    return new Slot(COLOR, null, raw);
+                case "secondaryColor":
+                    return new Slot(SECONDARY_COLOR, null, raw);
+                case "gradientId":
+                    return new Slot(GRADIENT_ID, null, raw);
+                case "gradientUrl":
+                    return new Slot(GRADIENT_URL, null, raw);
+                case "lighten":
+                    return arg == null ? new Slot(UNKNOWN, null, raw)
+                            : new Slot(SHADE, Shade.lighten(Float.parseFloat(arg)), raw);
+                case "darken":
+                    return arg == null ? new Slot(UNKNOWN, null, raw)
+                            : new Slot(SHADE, Shade.darken(Float.parseFloat(arg)), raw);
+                default:
+                    return new Slot(UNKNOWN, null, raw);
+            }
+        }
+    }
+}
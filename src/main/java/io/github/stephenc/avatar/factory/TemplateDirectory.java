@@ -0,0 +1,251 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Loads the avatar templates from a directory on the filesystem, using the same layout as the templates bundled with
+ * this library, e.g. {@code common/Nose.svg.hbs}. Any template that is not present in the directory falls back to the
+ * bundled template.
+ * <p>
+ * The directory is watched for changes. Only the templates that changed are recompiled, on a background thread, and
+ * the new template set is then swapped in atomically. Each render uses the template set that was current when it
+ * started, so in-flight renders always see a consistent set of templates and never wait for a reload.
+ */
+public final class TemplateDirectory implements Closeable {
+    private static final String SUFFIX = ".svg.hbs";
+    /**
+     * How long to wait for further changes before recompiling, so that a burst of changes, such as copying in a new
+     * hair style, is swapped in as a single update.
+     */
+    private static final long SETTLE_MILLIS = 50L;
+    @NonNull
+    private final Path root;
+    @NonNull
+    private final Consumer<? super Exception> errorHandler;
+    @NonNull
+    private final AtomicReference<TemplateSet> templates;
+    @NonNull
+    private final AvatarRenderer renderer;
+    @NonNull
+    private final WatchService watcher;
+    @NonNull
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private TemplateDirectory(@NonNull Path root, @NonNull Consumer<? super Exception> errorHandler)
+            throws IOException {
+        this.root = root;
+        this.errorHandler = errorHandler;
+        this.templates = new AtomicReference<>(compile());
+        this.renderer = new AvatarRenderer(templates::get);
+        this.watcher = root.getFileSystem().newWatchService();
+        try {
+            registerAll(root);
+        } catch (IOException e) {
+            watcher.close();
+            throw e;
+        }
+        this.thread = new Thread(this::watch, "avatar-templates-" + root.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Loads the templates from a directory and starts watching it for changes. Templates that fail to reload are
+     * ignored and the previous version of the template remains in use.
+     *
+     * @param root the directory.
+     * @return the template directory.
+     * @throws IOException if the templates could not be read.
+     */
+    @NonNull
+    public static TemplateDirectory open(@NonNull Path root) throws IOException {
+        return open(root, e -> {
+        });
+    }
+
+    /**
+     * Loads the templates from a directory and starts watching it for changes.
+     *
+     * @param root         the directory.
+     * @param errorHandler notified of any template that fails to reload, the previous version of the template
+     *                     remains in use.
+     * @return the template directory.
+     * @throws IOException if the templates could not be read.
+     */
+    @NonNull
+    public static TemplateDirectory open(@NonNull Path root, @NonNull Consumer<? super Exception> errorHandler)
+            throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        return new TemplateDirectory(root, Objects.requireNonNull(errorHandler));
+    }
+
+    @NonNull
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns a renderer that always uses the current templates of this directory.
+     *
+     * @return the renderer.
+     */
+    @NonNull
+    public AvatarRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Recompiles every template, for use where the filesystem does not report changes reliably.
+     *
+     * @throws IOException if the templates could not be read, in which case the current templates remain in use.
+     */
+    public void reload() throws IOException {
+        // compile under the lock, so that a concurrent update cannot be overwritten by templates read before it
+        synchronized (templates) {
+            templates.set(compile());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+    }
+
+    private TemplateSet compile() throws IOException {
+        try {
+            return TemplateSet.compile(this::source);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private String source(String path) {
+        Path file = root.resolve(path.replace('/', File.separatorChar) + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return TemplateSet.load(path);
+        }
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void registerAll(Path directory) throws IOException {
+        try (Stream<Path> directories = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watch() {
+        while (!closed) {
+            Set<String> changed = new HashSet<>();
+            boolean overflow = false;
+            try {
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    overflow |= collect(key, changed);
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            try {
+                if (overflow) {
+                    reload();
+                } else if (!changed.isEmpty()) {
+                    update(changed);
+                }
+            } catch (IOException | RuntimeException e) {
+                errorHandler.accept(e);
+            }
+        }
+    }
+
+    /**
+     * Collects the template paths affected by the events of a watch key.
+     *
+     * @return {@code true} if events were lost and everything must be reloaded.
+     */
+    private boolean collect(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                // anything written before the new directory was registered has to be picked up by hand
+                try {
+                    registerAll(child);
+                    try (Stream<Path> files = Files.walk(child)) {
+                        files.forEach(file -> addPath(file, changed));
+                    }
+                } catch (IOException e) {
+                    overflow = true;
+                }
+            } else {
+                addPath(child, changed);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void addPath(Path file, Set<String> changed) {
+        String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+        if (path.endsWith(SUFFIX)) {
+            changed.add(path.substring(0, path.length() - SUFFIX.length()));
+        }
+    }
+
+    private void update(Set<String> changed) {
+        synchronized (templates) {
+            TemplateSet current = templates.get();
+            Map<String, Template> replacements = new HashMap<>();
+            for (String path : changed) {
+                if (!current.paths().contains(path)) {
+                    continue;
+                }
+                try {
+                    replacements.put(path, Template.compile(source(path)));
+                } catch (RuntimeException e) {
+                    errorHandler.accept(e);
+                }
+            }
+            if (!replacements.isEmpty()) {
+                templates.set(current.with(replacements));
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.stephenc.avatar.factory;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The complete set of compiled templates needed to render any avatar. A template set is immutable, so a render that
+ * starts with one template set will finish with the same templates.
+ */
+final class TemplateSet {
+    static final String AVATAR = "Avatar";
+    static final String BACKGROUND = "common/Background";
+    static final String EYES = "common/Eyes";
+    static final String NOSE = "common/Nose";
+    static final String MALE_HAIR = "male/Hair";
+    static final String FEMALE_HAIR = "female/Hair";
+
+    @NonNull
+    final Template avatar;
+    @NonNull
+    final Template background;
+    @NonNull
+    final Template eyesFrame;
+    @NonNull
+    final Template nose;
+    @NonNull
+    final Template maleHair;
+    @NonNull
+    final Template femaleHair;
+    @NonNull
+    final Template[] heads;
+    @NonNull
+    final Template[] accessories;
+    @NonNull
+    final Template[] clothes;
+    @NonNull
+    final Template[] eyes;
+    @NonNull
+    final Template[] glasses;
+    @NonNull
+    final Template[] hair;
+    @NonNull
+    final Template[] facialHair;
+    @NonNull
+    final Template[] mouths;
+    /**
+     * Every template in this set, keyed by path.
+     */
+    @NonNull
+    private final Map<String, Template> byPath;
+    /**
+     * The low detail variant of this template set, derived with the set so that no render ever waits for it.
+     */
+    @NonNull
+    private final TemplateSet lowDetail;
+
+    /**
+     * Creates a low detail template set.
+     */
+    private TemplateSet(Function<String, Template> resolver) {
+        this(resolver, false, null);
+    }
+
+    /**
+     * Creates a template set.
+     *
+     * @param resolver        resolves each path to its template.
+     * @param deriveLowDetail {@code true} to derive the low detail variant, {@code false} if this is the low detail
+     *                        variant.
+     * @param previous        a template set whose low detail templates can be reused for the templates this set
+     *                        shares with it.
+     */
+    private TemplateSet(Function<String, Template> resolver, boolean deriveLowDetail,
+                        @CheckForNull TemplateSet previous) {
+        Map<String, Template> byPath = new LinkedHashMap<>();
+        Function<String, Template> templates = path -> byPath.computeIfAbsent(path, resolver);
+        avatar = templates.apply(AVATAR);
+        background = templates.apply(BACKGROUND);
+        eyesFrame = templates.apply(EYES);
+        nose = templates.apply(NOSE);
+        maleHair = templates.apply(MALE_HAIR);
+        femaleHair = templates.apply(FEMALE_HAIR);
+        AvatarBuilder.Head[] headValues = AvatarBuilder.Head.values();
+        heads = new Template[headValues.length];
+        for (int i = 0; i < headValues.length; i++) {
+            heads[i] = templates.apply(headValues[i].path());
+        }
+        AvatarBuilder.Accessory[] accessoryValues = AvatarBuilder.Accessory.values();
+        accessories = new Template[accessoryValues.length];
+        for (int i = 0; i < accessoryValues.length; i++) {
+            accessories[i] = templates.apply(accessoryValues[i].path());
+        }
+        AvatarBuilder.Clothes[] clothesValues = AvatarBuilder.Clothes.values();
+        clothes = new Template[clothesValues.length];
+        for (int i = 0; i < clothesValues.length; i++) {
+            clothes[i] = templates.apply(clothesValues[i].path());
+        }
+        AvatarBuilder.Eyes[] eyesValues = AvatarBuilder.Eyes.values();
+        eyes = new Template[eyesValues.length];
+        for (int i = 0; i < eyesValues.length; i++) {
+            eyes[i] = templates.apply(eyesValues[i].path());
+        }
+        AvatarBuilder.Glasses[] glassesValues = AvatarBuilder.Glasses.values();
+        glasses = new Template[glassesValues.length];
+        for (int i = 0; i < glassesValues.length; i++) {
+            glasses[i] = templates.apply(glassesValues[i].path());
+        }
+        AvatarBuilder.Hair[] hairValues = AvatarBuilder.Hair.values();
+        hair = new Template[hairValues.length];
+        for (int i = 0; i < hairValues.length; i++) {
+            hair[i] = templates.apply(hairValues[i].path());
+        }
+        AvatarBuilder.FacialHair[] facialHairValues = AvatarBuilder.FacialHair.values();
+        facialHair = new Template[facialHairValues.length];
+        for (int i = 0; i < facialHairValues.length; i++) {
+            facialHair[i] = templates.apply(facialHairValues[i].path());
+        }
+        AvatarBuilder.Mouth[] mouthValues = AvatarBuilder.Mouth.values();
+        mouths = new Template[mouthValues.length];
+        for (int i = 0; i < mouthValues.length; i++) {
+            mouths[i] = templates.apply(mouthValues[i].path());
+        }
+        this.byPath = Collections.unmodifiableMap(byPath);
+        this.lowDetail = deriveLowDetail ? new TemplateSet(path -> {
+            Template template = byPath.get(path);
+            if (previous != null && previous.byPath.get(path) == template) {
+                return previous.lowDetail.byPath.get(path);
+            }
+            return Template.compile(LevelOfDetail.simplify(template.source));
+        }) : this;
+    }
+
+    /**
+     * Returns the templates bundled with this library.
+     */
+    @NonNull
+    static TemplateSet classpath() {
+        return Classpath.INSTANCE;
+    }
+
+    /**
+     * Compiles a template set.
+     *
+     * @param source resolves a template path, such as {@code common/Nose}, to the template source.
+     * @return the template set.
+     */
+    @NonNull
+    static TemplateSet compile(@NonNull Function<String, String> source) {
+        return new TemplateSet(path -> Template.compile(source.apply(path)), true, null);
+    }
+
+    /**
+     * Returns the paths of every template in this set.
+     */
+    @NonNull
+    Set<String> paths() {
+        return byPath.keySet();
+    }
+
+    /**
+     * Creates a copy of this template set with some of the templates replaced. Only the replaced templates have their
+     * low detail variants derived again.
+     *
+     * @param replacements the replacement templates keyed by path, paths that are not part of this set are ignored.
+     * @return the new template set.
+     */
+    @NonNull
+    TemplateSet with(@NonNull Map<String, Template> replacements) {
+        return new TemplateSet(path -> {
+            Template replacement = replacements.get(path);
+            return replacement == null ? byPath.get(path) : replacement;
+        }, true, this);
+    }
+
+    /**
+     * Returns the low detail variant of this template set, which is its own low detail variant.
+     */
+    @NonNull
+    TemplateSet lowDetail() {
+        return lowDetail;
+    }
+
+    @NonNull
+    Template hairFrame(@NonNull AvatarBuilder.Hair hair) {
+        return hair.templateGroup() == AvatarBuilder.TemplateGroup.MALE ? maleHair : femaleHair;
+    }
+
+    @NonNull
+    static String load(@NonNull String template) {
+        byte[] buf = new byte[1024];
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = TemplateSet.class.getResourceAsStream(template + ".svg.hbs")) {
+            int len;
+            while (-1 != (len = is.read(buf))) {
+                bos.write(buf, 0, len);
+            }
+            return bos.toString(StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Classpath {
+        private static final TemplateSet INSTANCE = compile(TemplateSet::load);
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.stephenc.avatar.factory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncAvatarRendererTest {
+    @Test
+    void given__name__when__rendered_async__then__same_as_build() throws Exception {
+        try (AsyncAvatarRenderer renderer = new AsyncAvatarRenderer(2, 16)) {
+            byte[] expected = new AvatarBuilder("Bob").build().getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(expected, renderer.renderAsync("Bob").get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void given__builder__when__modified_after_submission__then__submitted_state_rendered() throws Exception {
+        try (AsyncAvatarRenderer renderer = new AsyncAvatarRenderer(1, 16)) {
+            AvatarBuilder builder = new AvatarBuilder("Alice");
+            byte[] expected = builder.build().getBytes(StandardCharsets.UTF_8);
+            CompletableFuture<byte[]> future = renderer.renderAsync(builder);
+            builder.hair(null, null);
+            assertArrayEquals(expected, future.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void given__subscriber__when__requesting__then__only_requested_avatars_delivered_in_order() throws Exception {
+        List<String> names = Arrays.asList("Alice", "Bob", "Carol", "Dave", "Eve");
+        List<byte[]> received = new ArrayList<>();
+        AtomicReference<AsyncAvatarRenderer.Subscription> subscription = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch twoReceived = new CountDownLatch(2);
+        CountDownLatch completed = new CountDownLatch(1);
+        try (AsyncAvatarRenderer renderer = new AsyncAvatarRenderer(4, 16)) {
+            renderer.subscribeNames(names.iterator(), new AsyncAvatarRenderer.Subscriber() {
+                @Override
+                public void onSubscribe(AsyncAvatarRenderer.Subscription s) {
+                    subscription.set(s);
+                    s.request(2);
+                }
+
+                @Override
+                public void onNext(byte[] avatar) {
+                    synchronized (received) {
+                        received.add(avatar);
+                    }
+                    twoReceived.countDown();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    error.set(throwable);
+                    completed.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.countDown();
+                }
+            });
+            assertTrue(twoReceived.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            synchronized (received) {
+                assertEquals(2, received.size());
+            }
+            subscription.get().request(Long.MAX_VALUE);
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+        }
+        assertNull(error.get());
+        assertEquals(names.size(), received.size());
+        for (int i = 0; i < names.size(); i++) {
+            assertArrayEquals(new AvatarBuilder(names.get(i)).build().getBytes(StandardCharsets.UTF_8),
+                    received.get(i));
+        }
+    }
+
+    @Test
+    void given__more_names_than_capacity__when__requesting_all__then__subscription_slows_down_rather_than_fails()
+            throws Exception {
+        List<String> names = names("many", 200);
+        try (AsyncAvatarRenderer renderer = new AsyncAvatarRenderer(1, 1)) {
+            Collector collector = new Collector();
+            renderer.subscribeNames(names.iterator(), collector);
+            collector.assertReceived(names);
+        }
+    }
+
+    @Test
+    void given__concurrent_subscribers__when__saturating_renderer__then__both_complete() throws Exception {
+        List<String> first = names("first", 100);
+        List<String> second = names("second", 100);
+        try (AsyncAvatarRenderer renderer = new AsyncAvatarRenderer(2, 2)) {
+            Collector firstCollector = new Collector();
+            Collector secondCollector = new Collector();
+            renderer.subscribeNames(first.iterator(), firstCollector);
+            renderer.subscribeNames(second.iterator(), secondCollector);
+            firstCollector.assertReceived(first);
+            secondCollector.assertReceived(second);
+        }
+    }
+
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + "-" + i);
+        }
+        return names;
+    }
+
+    /**
+     * Requests everything up front and records what arrives.
+     */
+    private static final class Collector implements AsyncAvatarRenderer.Subscriber {
+        private final List<byte[]> received = new ArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(AsyncAvatarRenderer.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(byte[] avatar) {
+            synchronized (received) {
+                received.add(avatar);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        void assertReceived(List<String> names) throws InterruptedException {
+            assertTrue(completed.await(30, TimeUnit.SECONDS));
+            assertNull(error.get());
+            synchronized (received) {
+                assertEquals(names.size(), received.size());
+                for (int i = 0; i < names.size(); i++) {
+                    assertArrayEquals(new AvatarBuilder(names.get(i)).build().getBytes(StandardCharsets.UTF_8),
+                            received.get(i), names.get(i));
+                }
+            }
+        }
+    }
+}
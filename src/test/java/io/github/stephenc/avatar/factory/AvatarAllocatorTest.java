@@ -0,0 +1,116 @@
+package io.github.stephenc.avatar.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AvatarAllocatorTest {
+    @Test
+    void given__allocator__when__filled__then__every_avatar_distinct() {
+        AvatarAllocator allocator = new AvatarAllocator(10_001);
+        Set<Long> ranks = new HashSet<>();
+        IntStream.range(0, 10_001).parallel()
+                .mapToObj(i -> allocator.allocate("user-" + (i % 37)))
+                .map(AvatarIndex::rank)
+                .sequential()
+                .forEach(rank -> assertTrue(ranks.add(rank)));
+        assertEquals(10_001, allocator.size());
+        assertThrows(IllegalStateException.class, () -> allocator.allocate("one too many"));
+    }
+
+    @Test
+    void given__allocated_avatar__then__claimed_until_released() {
+        AvatarAllocator allocator = new AvatarAllocator(1000);
+        AvatarBuilder avatar = allocator.allocate("Bob");
+        assertTrue(allocator.isAllocated(avatar));
+        assertFalse(allocator.claim(avatar));
+        assertTrue(allocator.release(avatar));
+        assertFalse(allocator.isAllocated(avatar));
+        assertTrue(allocator.claim(avatar));
+        assertEquals(1, allocator.size());
+        assertFalse(allocator.isAllocated(new AvatarBuilder("Bob")));
+    }
+
+    @Test
+    void given__allocator__when__persisted__then__restored() throws IOException {
+        AvatarAllocator allocator = new AvatarAllocator(100);
+        Set<Long> ranks = new HashSet<>();
+        for (int i = 0; i < 60; i++) {
+            ranks.add(AvatarIndex.rank(allocator.allocate("user-" + i)));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        allocator.writeTo(bytes);
+
+        AvatarAllocator restored = AvatarAllocator.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(100, restored.capacity());
+        assertEquals(60, restored.size());
+        for (int i = 0; i < 40; i++) {
+            assertTrue(ranks.add(AvatarIndex.rank(restored.allocate("user-" + i))));
+        }
+        assertThrows(IllegalStateException.class, () -> restored.allocate("one too many"));
+    }
+
+    @Test
+    void given__seeded_avatars__when__claimed__then__tracked_and_persisted() throws IOException {
+        // given
+        AvatarAllocator allocator = new AvatarAllocator(1000);
+        List<AvatarBuilder> existing = IntStream.range(0, 5000)
+                .mapToObj(i -> new AvatarBuilder("existing-" + i))
+                .collect(Collectors.toList());
+        Set<Long> distinct = existing.stream().map(AvatarIndex::rank).collect(Collectors.toSet());
+
+        // when
+        long claimed = existing.stream().filter(allocator::claim).count();
+
+        // then
+        assertEquals(distinct.size(), claimed);
+        assertEquals(distinct.size(), allocator.size());
+        existing.forEach(avatar -> assertTrue(allocator.isAllocated(avatar)));
+        existing.forEach(avatar -> assertFalse(allocator.claim(avatar)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        allocator.writeTo(bytes);
+        AvatarAllocator restored = AvatarAllocator.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(distinct.size(), restored.size());
+        existing.forEach(avatar -> assertTrue(restored.isAllocated(avatar)));
+    }
+
+    @Test
+    void given__claimed_avatars__when__released_in_any_order__then__others_still_claimed() {
+        AvatarAllocator allocator = new AvatarAllocator(64);
+        Random random = new Random(42);
+        List<AvatarBuilder> claimed = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            if (claimed.isEmpty() || random.nextInt(3) != 0) {
+                AvatarBuilder avatar = AvatarIndex.unrank("x", Math.floorMod(random.nextLong(), AvatarIndex.count()));
+                if (allocator.claim(avatar)) {
+                    claimed.add(avatar);
+                }
+            } else {
+                assertTrue(allocator.release(claimed.remove(random.nextInt(claimed.size()))));
+            }
+        }
+        assertEquals(claimed.size(), allocator.size());
+        claimed.forEach(avatar -> assertTrue(allocator.isAllocated(avatar)));
+    }
+
+    @Test
+    void given__avatar_outside_index__then__rejected() {
+        AvatarAllocator allocator = new AvatarAllocator(1000);
+        AvatarBuilder noHair = new AvatarBuilder("Bob").hair(null, null);
+        assertThrows(IllegalArgumentException.class, () -> allocator.claim(noHair));
+        assertThrows(IllegalArgumentException.class, () -> allocator.isAllocated(noHair));
+    }
+}
@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -48,6 +49,35 @@ class AvatarBuilderTest {
         // from its mean, which would bring it into the range that is 3 standard deviations from a 2% biased generator
     }
 
+    @Test
+    void given__built_avatar__when__modified_and_rebuilt__then__same_as_full_render() {
+        // given
+        AvatarRenderer renderer = new AvatarRenderer();
+        AvatarBuilder builder = new AvatarBuilder("Bob");
+        assertEquals(renderer.render(builder), builder.build());
+        assertEquals(renderer.render(builder), builder.build());
+
+        // when
+        builder.hair(AvatarBuilder.Hair.MALE_C, AvatarBuilder.HairColor.LIGHT_RED);
+        String afterHair = builder.build();
+        builder.clothes(AvatarBuilder.Clothes.MALE_D, AvatarBuilder.Color.WISTERIA, null);
+        builder.glasses(null, null);
+        String afterClothes = builder.build();
+        builder.head(AvatarBuilder.Head.FEMALE, AvatarBuilder.SkinColor.DARK_BROWN, AvatarBuilder.SkinColor.BROWN);
+        String afterHead = builder.build();
+        String unchanged = builder.build();
+
+        // then
+        AvatarBuilder expected = new AvatarBuilder("Bob")
+                .hair(AvatarBuilder.Hair.MALE_C, AvatarBuilder.HairColor.LIGHT_RED);
+        assertEquals(renderer.render(expected), afterHair);
+        expected.clothes(AvatarBuilder.Clothes.MALE_D, AvatarBuilder.Color.WISTERIA, null).glasses(null, null);
+        assertEquals(renderer.render(expected), afterClothes);
+        expected.head(AvatarBuilder.Head.FEMALE, AvatarBuilder.SkinColor.DARK_BROWN, AvatarBuilder.SkinColor.BROWN);
+        assertEquals(renderer.render(expected), afterHead);
+        assertEquals(afterHead, unchanged);
+    }
+
     //@Test
     void generate_samples() throws IOException {
         Files.write(Paths.get("bob.svg"), new AvatarBuilder("Bob").build().getBytes(StandardCharsets.UTF_8));
@@ -0,0 +1,54 @@
+package io.github.stephenc.avatar.factory;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AvatarIndexTest {
+    @Test
+    void given__head_counts__then__ranges_are_dense() {
+        long total = 0;
+        for (AvatarBuilder.Head head : AvatarBuilder.Head.values()) {
+            assertEquals(total, AvatarIndex.offset(head));
+            total += AvatarIndex.count(head);
+        }
+        assertEquals(total, AvatarIndex.count());
+    }
+
+    @Test
+    void given__random_ranks__when__unranked__then__rank_round_trips() {
+        Random random = new Random(42);
+        long[] ranks = {0, 1, AvatarIndex.count() - 1, AvatarIndex.offset(AvatarBuilder.Head.FEMALE) - 1,
+                AvatarIndex.offset(AvatarBuilder.Head.FEMALE)};
+        for (long rank : ranks) {
+            assertEquals(rank, AvatarIndex.rank(AvatarIndex.unrank("x", rank)));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            long rank = Math.floorMod(random.nextLong(), AvatarIndex.count());
+            AvatarBuilder avatar = AvatarIndex.unrank("x", rank);
+            assertEquals(rank, AvatarIndex.rank(avatar));
+        }
+    }
+
+    @Test
+    void given__seeded_avatars__when__ranked__then__unranked_avatar_renders_identically() {
+        for (int i = 0; i < 1_000; i++) {
+            AvatarBuilder avatar = new AvatarBuilder("name-" + i);
+            long rank = AvatarIndex.rank(avatar);
+            assertEquals(avatar.build(), AvatarIndex.unrank("name-" + i, rank).build());
+        }
+    }
+
+    @Test
+    void given__invalid_avatars__then__rank_rejected() {
+        AvatarBuilder noHair = new AvatarBuilder("Bob").hair(null, null);
+        assertThrows(IllegalArgumentException.class, () -> AvatarIndex.rank(noHair));
+        AvatarBuilder mismatched = new AvatarBuilder("Bob")
+                .head(AvatarBuilder.Head.MALE, AvatarBuilder.SkinColor.TAN, AvatarBuilder.SkinColor.PALE)
+                .hair(AvatarBuilder.Hair.FEMALE_A, null);
+        assertThrows(IllegalArgumentException.class, () -> AvatarIndex.rank(mismatched));
+        assertThrows(IllegalArgumentException.class, () -> AvatarIndex.unrank("x", AvatarIndex.count()));
+    }
+}
@@ -0,0 +1,217 @@
+package io.github.stephenc.avatar.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AvatarRendererTest {
+    private final AvatarRenderer renderer = new AvatarRenderer();
+
+    @Test
+    void given__avatar__when__rendered_to_each_output__then__outputs_agree() throws IOException {
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // an unpaired surrogate is encoded as '?', so its length cannot be known until it is encoded
+            mixed.append("😀é中\uD800 ");
+        }
+        for (String name : new String[] {"Bob", "Alice", "Zoë", "😀 smiley", "Tom & \"Jerry\" <3", mixed.toString()}) {
+            AvatarBuilder avatar = new AvatarBuilder(name);
+            String expected = renderer.render(avatar);
+
+            StringWriter writer = new StringWriter();
+            renderer.render(avatar, writer);
+            assertEquals(expected, writer.toString());
+
+            StringBuilder builder = new StringBuilder();
+            renderer.render(avatar, builder);
+            assertEquals(expected, builder.toString());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            renderer.render(avatar, bytes);
+            assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+
+            assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), renderer.renderBytes(avatar));
+        }
+    }
+
+    @Test
+    void given__name_with_markup__when__rendered__then__escaped() throws Exception {
+        // given
+        AvatarBuilder avatar = new AvatarBuilder("<b>Tom</b> & 'Jerry'\u0007");
+
+        // when
+        String svg = renderer.render(avatar);
+
+        // then
+        assertTrue(svg.contains("<title>&lt;b&gt;Tom&lt;/b&gt; &amp; &apos;Jerry&apos;\uFFFD</title>"));
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(renderer.renderBytes(avatar)));
+        assertEquals("<b>Tom</b> & 'Jerry'\uFFFD",
+                document.getElementsByTagName("title").item(0).getTextContent());
+    }
+
+    @Test
+    void given__small_size__when__rendered__then__low_detail_and_well_formed() throws Exception {
+        DocumentBuilder parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        for (int i = 0; i < 500; i++) {
+            // given
+            AvatarBuilder avatar = new AvatarBuilder("name-" + i);
+
+            // when
+            String full = renderer.render(avatar);
+            String small = renderer.render(avatar, 32);
+
+            // then
+            assertTrue(small.length() < full.length());
+            assertTrue(small.contains(" width=\"32\" height=\"32\" viewBox="));
+            assertFalse(small.contains("Gradient"));
+            assertFalse(small.contains("url(#"));
+            assertFalse(small.contains("{{"));
+            parser.parse(new ByteArrayInputStream(renderer.renderBytes(avatar, 32)));
+        }
+    }
+
+    @Test
+    void given__every_template__when__simplified__then__every_path_kept() {
+        for (String path : TemplateSet.classpath().paths()) {
+            // given
+            String source = TemplateSet.load(path);
+
+            // when
+            String simplified = LevelOfDetail.simplify(source);
+
+            // then
+            assertEquals(count(source, "<path"), count(simplified, "<path"), path);
+        }
+    }
+
+    private static int count(String text, String substring) {
+        int count = 0;
+        for (int i = text.indexOf(substring); i >= 0; i = text.indexOf(substring, i + substring.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    void given__large_size__when__rendered__then__full_detail_with_size() {
+        AvatarBuilder avatar = new AvatarBuilder("Bob");
+        assertEquals(renderer.render(avatar).replace("  viewBox=", " width=\"256\" height=\"256\" viewBox="),
+                renderer.render(avatar, 256));
+        assertEquals(renderer.render(avatar, 256), avatar.build(256));
+    }
+
+    @Test
+    void given__avatar__when__rendered_as_data_uri__then__decodes_to_svg() throws IOException {
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // surrogate pairs and unpaired surrogates land on both sides of the chunk boundaries
+            mixed.append("😀é中\uD800 ");
+        }
+        for (String name : new String[] {"Bob", "Zoë", "😀 smiley", "Tom & Jerry", mixed.toString(), "x" + mixed}) {
+            AvatarBuilder avatar = new AvatarBuilder(name);
+            byte[] svg = renderer.renderBytes(avatar);
+            for (AvatarRenderer.DataUriEncoding encoding : AvatarRenderer.DataUriEncoding.values()) {
+                // when
+                String uri = renderer.renderDataUri(avatar, encoding);
+
+                // then
+                if (encoding == AvatarRenderer.DataUriEncoding.BASE64) {
+                    assertEquals("data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(svg), uri);
+                } else {
+                    String prefix = "data:image/svg+xml;charset=utf-8,";
+                    assertTrue(uri.startsWith(prefix));
+                    assertTrue(uri.substring(prefix.length()).matches("[A-Za-z0-9\\-._~!$()*+,;=:/?@%]*"));
+                    assertArrayEquals(svg, percentDecode(uri.substring(prefix.length())));
+                }
+                StringWriter writer = new StringWriter();
+                renderer.renderDataUri(avatar, encoding, writer);
+                assertEquals(uri, writer.toString());
+                StringBuilder builder = new StringBuilder();
+                renderer.renderDataUri(avatar, encoding, builder);
+                assertEquals(uri, builder.toString());
+                StringBuffer buffer = new StringBuffer();
+                renderer.renderDataUri(avatar, encoding, buffer);
+                assertEquals(uri, buffer.toString());
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                renderer.renderDataUri(avatar, encoding, bytes);
+                assertEquals(uri, new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    @Test
+    void given__huge_name__when__rendered__then__scratch_buffers_not_retained() throws IOException {
+        // given
+        char[] name = new char[1_000_000];
+        Arrays.fill(name, 'x');
+        AvatarBuilder avatar = new AvatarBuilder(new String(name));
+
+        // when
+        renderer.render(avatar);
+        renderer.renderBytes(avatar);
+        renderer.renderDataUri(avatar, AvatarRenderer.DataUriEncoding.PERCENT);
+        avatar.build();
+
+        // then
+        assertTrue(AvatarRenderer.retainedScratch() <= 3 * 65536, "retained " + AvatarRenderer.retainedScratch());
+    }
+
+    @Test
+    void given__long_name__when__rendered_as_bytes__then__scratch_buffers_retained() {
+        // given
+        char[] name = new char[15_000];
+        Arrays.fill(name, 'é');
+        AvatarBuilder avatar = new AvatarBuilder(new String(name));
+        int length = renderer.render(avatar).length();
+
+        // when
+        renderer.renderBytes(avatar);
+
+        // then
+        assertTrue(length * 3 > 65536, "too short to need a large UTF-8 buffer");
+        assertTrue(AvatarRenderer.retainedScratch() >= 3L * length, "retained " + AvatarRenderer.retainedScratch());
+    }
+
+    private static byte[] percentDecode(String encoded) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c == '%') {
+                result.write(Integer.parseInt(encoded.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                result.write(c);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    void given__shared_renderer__when__used_concurrently__then__same_as_sequential() {
+        List<String> names = IntStream.range(0, 2000).mapToObj(i -> "name-" + i).collect(Collectors.toList());
+        List<String> sequential = names.stream()
+                .map(name -> renderer.render(new AvatarBuilder(name)))
+                .collect(Collectors.toList());
+        List<String> parallel = names.parallelStream()
+                .map(name -> renderer.render(new AvatarBuilder(name)))
+                .collect(Collectors.toList());
+        assertEquals(sequential, parallel);
+    }
+}
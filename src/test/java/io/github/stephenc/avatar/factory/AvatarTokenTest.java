@@ -0,0 +1,71 @@
+package io.github.stephenc.avatar.factory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AvatarTokenTest {
+    @Test
+    void given__golden_cases__when__encoded__then__decoded_avatar_renders_identically() {
+        for (GoldenCorpus.Case c : GoldenCorpus.cases()) {
+            AvatarBuilder avatar = c.avatar.get();
+            String token = AvatarToken.encode(avatar);
+            assertTrue(token.matches("[0-9A-Za-z]{" + AvatarToken.LENGTH + "}"), token);
+            assertEquals(avatar.build(), AvatarToken.decode(avatar.getName(), token).build(), c.key);
+        }
+    }
+
+    @Test
+    void given__largest_state__when__encoded__then__fits_in_token() {
+        AvatarBuilder avatar = new AvatarBuilder("max", last(AvatarBuilder.Head.values()),
+                last(AvatarBuilder.SkinColor.values()), last(AvatarBuilder.SkinColor.values()))
+                .accessory(last(AvatarBuilder.Accessory.values()), last(AvatarBuilder.Color.values()))
+                .background(last(AvatarBuilder.Color.values()), last(AvatarBuilder.Color.values()))
+                .clothes(last(AvatarBuilder.Clothes.values()), last(AvatarBuilder.Color.values()),
+                        last(AvatarBuilder.Color.values()))
+                .eyes(last(AvatarBuilder.Eyes.values()), last(AvatarBuilder.EyesColor.values()))
+                .glasses(last(AvatarBuilder.Glasses.values()), last(AvatarBuilder.Color.values()))
+                .facialHair(last(AvatarBuilder.FacialHair.values()), last(AvatarBuilder.HairColor.values()))
+                .hair(last(AvatarBuilder.Hair.values()), last(AvatarBuilder.HairColor.values()))
+                .mouth(last(AvatarBuilder.Mouth.values()), last(AvatarBuilder.LipColor.values()));
+        assertEquals(avatar.build(), AvatarToken.decode("max", AvatarToken.encode(avatar)).build());
+    }
+
+    @Test
+    void given__published_token__when__decoded__then__same_avatar() {
+        // tokens end up in permanently cached URLs, so the encoding of an avatar must never change
+        assertEquals("AfzUrKW5bt1HZci", AvatarToken.encode(new AvatarBuilder("Bob")));
+        assertEquals(new AvatarBuilder("Bob").build(), AvatarToken.decode("Bob", "AfzUrKW5bt1HZci").build());
+    }
+
+    @Test
+    void given__corrupted_tokens__then__decode_rejected() {
+        String token = AvatarToken.encode(new AvatarBuilder("Alice"));
+        String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        for (int i = 0; i < token.length(); i++) {
+            for (int j = 0; j < alphabet.length(); j++) {
+                if (alphabet.charAt(j) != token.charAt(i)) {
+                    String corrupted = token.substring(0, i) + alphabet.charAt(j) + token.substring(i + 1);
+                    assertThrows(IllegalArgumentException.class, () -> AvatarToken.decode("Alice", corrupted),
+                            corrupted);
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> AvatarToken.decode("Alice", token.substring(1)));
+        assertThrows(IllegalArgumentException.class, () -> AvatarToken.decode("Alice", token + "0"));
+        assertThrows(IllegalArgumentException.class, () -> AvatarToken.decode("Alice", "-" + token.substring(1)));
+    }
+
+    @Test
+    void given__registered_color__then__encode_rejected() {
+        Palette palette = Palette.builder("token-test").add("Teal", "#008080").register();
+        AvatarBuilder avatar = new AvatarBuilder("Bob").glassesColor(palette.getColors().get(0));
+        assertThrows(IllegalArgumentException.class, () -> AvatarToken.encode(avatar));
+    }
+
+    private static <T> T last(T[] values) {
+        return values[values.length - 1];
+    }
+}
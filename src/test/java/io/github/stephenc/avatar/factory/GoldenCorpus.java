@@ -0,0 +1,200 @@
+package io.github.stephenc.avatar.factory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The deterministic set of avatars whose output must never change, and the content hashes of their SVGs.
+ * <p>
+ * The cases only use the API of the original {@link AvatarBuilder}, so that the corpus can be regenerated from the
+ * original implementation, rather than from whatever the current implementation happens to produce. Run
+ * {@link #main(String[])} with the path of the corpus to write.
+ */
+final class GoldenCorpus {
+    static final String RESOURCE = "golden-outputs.txt";
+    static final int SEEDED_NAMES = 10_000;
+
+    private GoldenCorpus() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Case> cases = cases();
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            out.write("# The first 64 bits of the SHA-256 of the UTF-8 SVG of each case in GoldenCorpus.cases()\n");
+            for (Case c : cases) {
+                out.write(c.key + " " + hash(c.avatar.get().build().getBytes(StandardCharsets.UTF_8)) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Returns every case, in a fixed order.
+     */
+    static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        for (int i = 0; i < SEEDED_NAMES; i++) {
+            String name = "name-" + i;
+            cases.add(new Case(name, () -> new AvatarBuilder(name)));
+        }
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longName.append((char) ('a' + i % 26));
+        }
+        String[] names = {"Bob", "Alice", "", "Zoë", "Ωmega", "😀 smiley", longName.toString()};
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            cases.add(new Case("special-" + i, () -> new AvatarBuilder(name)));
+        }
+        AvatarBuilder.Color[] colors = AvatarBuilder.Color.values();
+        AvatarBuilder.HairColor[] hairColors = AvatarBuilder.HairColor.values();
+        AvatarBuilder.SkinColor[] skinColors = AvatarBuilder.SkinColor.values();
+        for (AvatarBuilder.Head head : AvatarBuilder.Head.values()) {
+            String prefix = head + "/";
+            for (AvatarBuilder.Hair hair : AvatarBuilder.Hair.values()) {
+                for (AvatarBuilder.Eyes eyes : AvatarBuilder.Eyes.values()) {
+                    cases.add(new Case(prefix + "hair:" + hair + "/eyes:" + eyes, () -> base(head)
+                            .hair(hair, AvatarBuilder.HairColor.BROWN)
+                            .eyes(eyes, AvatarBuilder.EyesColor.BLUE)));
+                }
+            }
+            for (int i = 0; i < skinColors.length; i++) {
+                AvatarBuilder.SkinColor skin = skinColors[i];
+                AvatarBuilder.SkinColor nose = skinColors[(i + 1) % skinColors.length];
+                cases.add(new Case(prefix + "skin:" + skin, () -> base(head).head(head, skin, nose)));
+            }
+            cases.add(new Case(prefix + "accessory:null", () -> base(head).accessory(null, null)));
+            for (AvatarBuilder.Accessory accessory : AvatarBuilder.Accessory.values()) {
+                for (AvatarBuilder.Color color : colors) {
+                    cases.add(new Case(prefix + "accessory:" + accessory + "/" + color,
+                            () -> base(head).accessory(accessory, color)));
+                }
+            }
+            cases.add(new Case(prefix + "background:null", () -> base(head).background(null, null)));
+            for (int i = 0; i < colors.length; i++) {
+                AvatarBuilder.Color color = colors[i];
+                AvatarBuilder.Color secondary = colors[(i + 7) % colors.length];
+                cases.add(new Case(prefix + "background:" + color + "/" + secondary,
+                        () -> base(head).background(color, secondary)));
+            }
+            cases.add(new Case(prefix + "clothes:null", () -> base(head).clothes(null, null, null)));
+            for (AvatarBuilder.Clothes clothes : AvatarBuilder.Clothes.values()) {
+                for (int i = 0; i < colors.length; i++) {
+                    AvatarBuilder.Color color = colors[i];
+                    AvatarBuilder.Color secondary = colors[(i + 3) % colors.length];
+                    cases.add(new Case(prefix + "clothes:" + clothes + "/" + color + "/" + secondary,
+                            () -> base(head).clothes(clothes, color, secondary)));
+                }
+            }
+            cases.add(new Case(prefix + "glasses:null", () -> base(head).glasses(null, null)));
+            for (AvatarBuilder.Glasses glasses : AvatarBuilder.Glasses.values()) {
+                for (AvatarBuilder.Color color : colors) {
+                    cases.add(new Case(prefix + "glasses:" + glasses + "/" + color,
+                            () -> base(head).glasses(glasses, color)));
+                }
+            }
+            cases.add(new Case(prefix + "facialHair:null", () -> base(head).facialHair(null, null)));
+            for (AvatarBuilder.FacialHair facialHair : AvatarBuilder.FacialHair.values()) {
+                for (AvatarBuilder.HairColor color : hairColors) {
+                    cases.add(new Case(prefix + "facialHair:" + facialHair + "/" + color,
+                            () -> base(head).facialHair(facialHair, color)));
+                }
+            }
+            cases.add(new Case(prefix + "hair:null", () -> base(head).hair(null, null)));
+            for (AvatarBuilder.HairColor color : hairColors) {
+                cases.add(new Case(prefix + "hairColor:" + color,
+                        () -> base(head).hair(AvatarBuilder.Hair.values()[color.ordinal()
+                                % AvatarBuilder.Hair.values().length], color)));
+            }
+            for (AvatarBuilder.Mouth mouth : AvatarBuilder.Mouth.values()) {
+                for (AvatarBuilder.LipColor color : AvatarBuilder.LipColor.values()) {
+                    cases.add(new Case(prefix + "mouth:" + mouth + "/" + color,
+                            () -> base(head).mouth(mouth, color)));
+                }
+            }
+            for (AvatarBuilder.EyesColor color : AvatarBuilder.EyesColor.values()) {
+                cases.add(new Case(prefix + "eyesColor:" + color,
+                        () -> base(head).eyes(AvatarBuilder.Eyes.OPEN, color)));
+            }
+        }
+        return Collections.unmodifiableList(cases);
+    }
+
+    /**
+     * An avatar with every layer present, so that each case differs from it in exactly one layer.
+     */
+    private static AvatarBuilder base(AvatarBuilder.Head head) {
+        return new AvatarBuilder("golden", head, AvatarBuilder.SkinColor.TAN, AvatarBuilder.SkinColor.PALE)
+                .background(AvatarBuilder.Color.BELIZE_HOLE, AvatarBuilder.Color.CLOUDS)
+                .clothes(AvatarBuilder.Clothes.valueOf(head.name() + "_A"), AvatarBuilder.Color.POMEGRATE,
+                        AvatarBuilder.Color.SILVER)
+                .hair(AvatarBuilder.Hair.valueOf(head.name() + "_A"), AvatarBuilder.HairColor.BROWN)
+                .eyes(AvatarBuilder.Eyes.OPEN, AvatarBuilder.EyesColor.GREEN_GREY);
+    }
+
+    /**
+     * Loads the expected hashes.
+     *
+     * @return the hash of each case, keyed by case.
+     */
+    static Map<String, String> load() throws IOException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        try (InputStream is = GoldenCorpus.class.getResourceAsStream(RESOURCE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.lastIndexOf(' ');
+                hashes.put(line.substring(0, space), line.substring(space + 1));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the first 64 bits of the SHA-256 of the content, as hex.
+     */
+    static String hash(byte[] content) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JLS mandates support for SHA-256, this is not a valid JVM", e);
+        }
+        byte[] digest = md.digest(content);
+        StringBuilder hex = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    static final class Case {
+        final String key;
+        /**
+         * Creates a fresh instance of the avatar, as the render paths under test may modify it.
+         */
+        final Supplier<AvatarBuilder> avatar;
+
+        Case(String key, Supplier<AvatarBuilder> avatar) {
+            this.key = key;
+            this.avatar = avatar;
+        }
+    }
+}
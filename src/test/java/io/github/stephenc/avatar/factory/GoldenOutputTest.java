@@ -0,0 +1,229 @@
+package io.github.stephenc.avatar.factory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies that every render path produces exactly the output of the original implementation, as recorded in
+ * {@link GoldenCorpus}.
+ */
+class GoldenOutputTest {
+    private static AsyncAvatarRenderer async;
+    private static TemplateDirectory directory;
+
+    @BeforeAll
+    static void start(@TempDir Path templates) throws IOException {
+        async = new AsyncAvatarRenderer(2, 64);
+        directory = TemplateDirectory.open(templates);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        async.close();
+        directory.close();
+    }
+
+    @Test
+    void given__golden_corpus__when__rendered_by_every_path__then__byte_identical() throws IOException {
+        // given
+        Map<String, String> expected = GoldenCorpus.load();
+        List<GoldenCorpus.Case> cases = GoldenCorpus.cases();
+        assertEquals(expected.size(), cases.size(), "corpus is out of date");
+        List<RenderPath> paths = paths();
+
+        // when
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        cases.parallelStream().forEach(c -> {
+            byte[] reference = c.avatar.get().build().getBytes(StandardCharsets.UTF_8);
+            if (!GoldenCorpus.hash(reference).equals(expected.get(c.key))) {
+                failures.add(c.key + " differs from the corpus");
+                return;
+            }
+            for (RenderPath path : paths) {
+                if (path.applies.test(c.avatar.get())
+                        && !Arrays.equals(reference, path.render.apply(c.avatar.get()))) {
+                    failures.add(c.key + " differs when rendered by " + path.name);
+                }
+            }
+        });
+
+        // then
+        assertTrue(failures.isEmpty(), failures.size() + " divergent outputs, e.g. "
+                + failures.stream().limit(20).reduce((a, b) -> a + "\n" + b).orElse(""));
+    }
+
+    @Test
+    void given__readme_examples__when__built__then__same_as_published_images() throws IOException {
+        assertArrayEquals(Files.readAllBytes(Paths.get("bob.svg")),
+                new AvatarBuilder("Bob").build().getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(Files.readAllBytes(Paths.get("alice.svg")),
+                new AvatarBuilder("Alice").build().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Every way of rendering an avatar that must produce the same output as {@link AvatarBuilder#build()}.
+     */
+    private static List<RenderPath> paths() {
+        AvatarRenderer renderer = new AvatarRenderer();
+        List<RenderPath> paths = new ArrayList<>();
+        paths.add(new RenderPath("render(String)", avatar -> utf8(renderer.render(avatar))));
+        paths.add(new RenderPath("render(Writer)", avatar -> {
+            StringWriter out = new StringWriter();
+            io(() -> renderer.render(avatar, out));
+            return utf8(out.toString());
+        }));
+        paths.add(new RenderPath("render(StringBuilder)", avatar -> {
+            StringBuilder out = new StringBuilder();
+            io(() -> renderer.render(avatar, out));
+            return utf8(out.toString());
+        }));
+        paths.add(new RenderPath("render(OutputStream)", avatar -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            io(() -> renderer.render(avatar, out));
+            return out.toByteArray();
+        }));
+        paths.add(new RenderPath("renderBytes", renderer::renderBytes));
+        paths.add(new RenderPath("renderAsync", avatar -> async.renderAsync(avatar).join()));
+        paths.add(new RenderPath("TemplateDirectory", avatar -> directory.getRenderer().renderBytes(avatar)));
+        paths.add(new RenderPath("build() again", avatar -> {
+            avatar.build();
+            return utf8(avatar.build());
+        }));
+        paths.add(new RenderPath("build() after changes", avatar -> {
+            avatar.build();
+            // change every layer and back again, so every cached layer is rendered again
+            AvatarBuilder.Hair hair = avatar.getHair();
+            AvatarBuilder.HairColor hairColor = avatar.getHairColor();
+            AvatarBuilder.Glasses glasses = avatar.getGlasses();
+            AvatarBuilder.Color glassesColor = avatar.getGlassesColor();
+            avatar.hair(hair == AvatarBuilder.Hair.MALE_A ? AvatarBuilder.Hair.MALE_B : AvatarBuilder.Hair.MALE_A,
+                    hairColor).glasses(null, null);
+            avatar.build();
+            avatar.hair(hair, hairColor).glasses(glasses, glassesColor);
+            return utf8(avatar.build());
+        }));
+        for (AvatarRenderer.DataUriEncoding encoding : AvatarRenderer.DataUriEncoding.values()) {
+            paths.add(new RenderPath("renderDataUri(" + encoding + ")",
+                    avatar -> dataUri(renderer.renderDataUri(avatar, encoding))));
+            paths.add(new RenderPath("renderDataUri(" + encoding + ", Appendable)", avatar -> {
+                StringBuilder out = new StringBuilder();
+                io(() -> renderer.renderDataUri(avatar, encoding, out));
+                return dataUri(out.toString());
+            }));
+            paths.add(new RenderPath("renderDataUri(" + encoding + ", OutputStream)", avatar -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                io(() -> renderer.renderDataUri(avatar, encoding, out));
+                return dataUri(new String(out.toByteArray(), StandardCharsets.US_ASCII));
+            }));
+            paths.add(new RenderPath("buildDataUri(" + encoding + ")",
+                    avatar -> dataUri(avatar.buildDataUri(encoding))));
+            paths.add(new RenderPath("buildDataUri(" + encoding + ", Appendable)", avatar -> {
+                StringBuilder out = new StringBuilder();
+                io(() -> avatar.buildDataUri(encoding, out));
+                return dataUri(out.toString());
+            }));
+            paths.add(new RenderPath("buildDataUri(" + encoding + ", OutputStream)", avatar -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                io(() -> avatar.buildDataUri(encoding, out));
+                return dataUri(new String(out.toByteArray(), StandardCharsets.US_ASCII));
+            }));
+        }
+        paths.add(new RenderPath("buildDataUri()", avatar -> dataUri(avatar.buildDataUri())));
+        paths.add(new RenderPath("AvatarIndex round trip", GoldenOutputTest::indexed,
+                avatar -> utf8(AvatarIndex.unrank(avatar.getName(), AvatarIndex.rank(avatar)).build())));
+        return paths;
+    }
+
+    /**
+     * The index only covers avatars with every attribute set to a value that matches the head.
+     */
+    private static boolean indexed(AvatarBuilder avatar) {
+        try {
+            AvatarIndex.rank(avatar);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the SVG from a {@code data:} URI, returning the URI itself if it is not in a supported encoding so that
+     * it will not match.
+     */
+    private static byte[] dataUri(String uri) {
+        String base64 = "data:image/svg+xml;base64,";
+        String percent = "data:image/svg+xml;charset=utf-8,";
+        if (uri.startsWith(base64)) {
+            return Base64.getDecoder().decode(uri.substring(base64.length()));
+        }
+        if (uri.startsWith(percent)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            for (int i = percent.length(); i < uri.length(); i++) {
+                char c = uri.charAt(i);
+                if (c == '%') {
+                    result.write(Integer.parseInt(uri.substring(i + 1, i + 3), 16));
+                    i += 2;
+                } else {
+                    result.write(c);
+                }
+            }
+            return result.toByteArray();
+        }
+        return utf8(uri);
+    }
+
+    private static byte[] utf8(String svg) {
+        return svg.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void io(IORunnable runnable) {
+        try {
+            runnable.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface IORunnable {
+        void run() throws IOException;
+    }
+
+    private static final class RenderPath {
+        private final String name;
+        private final Predicate<AvatarBuilder> applies;
+        private final Function<AvatarBuilder, byte[]> render;
+
+        RenderPath(String name, Function<AvatarBuilder, byte[]> render) {
+            this(name, avatar -> true, render);
+        }
+
+        RenderPath(String name, Predicate<AvatarBuilder> applies, Function<AvatarBuilder, byte[]> render) {
+            this.name = name;
+            this.applies = applies;
+            this.render = render;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package io.github.stephenc.avatar.factory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays a realistic mix of avatar requests across a number of threads and records the latency of each request, so
+ * that capacity can be planned from measurements rather than from microbenchmarks.
+ * <p>
+ * Names are drawn from a Zipfian distribution over a fixed population of returning users, mixed with a configurable
+ * fraction of first-time users whose names have never been seen before. Each thread records into its own
+ * {@link Histogram}, so recording costs a few nanoseconds and never contends, and the histograms are merged once the
+ * run is complete. Run {@link #main(String[])} with, e.g., {@code 2000000 8 BUILD 100000 1.1 0.05}.
+ */
+final class LoadDriver {
+    private static final int BUILDER_CACHE_SIZE = 4096;
+    private final Workload workload;
+    private final Names names;
+    private final int threads;
+    private final long warmup;
+    private final long operations;
+
+    /**
+     * @param workload   what each request does.
+     * @param names      the distribution of names to request.
+     * @param threads    the number of threads making requests.
+     * @param warmup     the number of requests each thread makes before recording starts.
+     * @param operations the number of requests each thread records.
+     */
+    LoadDriver(Workload workload, Names names, int threads, long warmup, long operations) {
+        this.workload = workload;
+        this.names = names;
+        this.threads = threads;
+        this.warmup = warmup;
+        this.operations = operations;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long operations = args.length > 0 ? Long.parseLong(args[0].replace("_", "")) : 1_000_000L;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Workload workload = args.length > 2 ? Workload.valueOf(args[2]) : Workload.BUILD;
+        int population = args.length > 3 ? Integer.parseInt(args[3].replace("_", "")) : 100_000;
+        double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 1.1;
+        double newUsers = args.length > 5 ? Double.parseDouble(args[5]) : 0.05;
+        long perThread = Math.max(1, operations / threads);
+        Result result = new LoadDriver(workload, new Names(population, exponent, newUsers), threads,
+                Math.min(perThread, 50_000), perThread).run();
+        System.out.printf(Locale.ROOT, "%s: %,d requests on %d threads, population %,d, exponent %.2f, "
+                        + "%.1f%% first-time users%n",
+                workload, result.operations, threads, population, exponent, newUsers * 100);
+        System.out.printf(Locale.ROOT, "throughput  %,14.0f req/s%n", result.throughput());
+        String[] labels = {"p50", "p90", "p99", "p99.9", "max"};
+        double[] percentiles = {50, 90, 99, 99.9, 100};
+        for (int i = 0; i < labels.length; i++) {
+            System.out.printf(Locale.ROOT, "%-11s %,14.1f us%n", labels[i],
+                    result.histogram.valueAt(percentiles[i]) / 1e3);
+        }
+        if (result.allocatedBytes < 0) {
+            System.out.println("allocation  not supported by this JVM");
+        } else {
+            System.out.printf(Locale.ROOT, "allocation  %,14.0f B/req %,10.1f MB/s%n",
+                    (double) result.allocatedBytes / result.operations,
+                    result.allocatedBytes / (result.elapsedNanos / 1e9) / (1 << 20));
+        }
+    }
+
+    /**
+     * Runs the load.
+     *
+     * @return the merged measurements of every thread.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    Result run() throws InterruptedException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        if (allocations != null) {
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        Histogram histogram = new Histogram();
+        AtomicLong allocated = new AtomicLong();
+        AtomicLong start = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> start.set(System.nanoTime()));
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(0x5DEECE66DL * (t + 1));
+            Thread worker = new Thread(() -> {
+                try {
+                    Histogram local = new Histogram();
+                    Map<String, AvatarBuilder> builders = newBuilderCache();
+                    for (long i = 0; i < warmup; i++) {
+                        workload.request(names.next(random), builders);
+                    }
+                    barrier.await();
+                    long threadId = Thread.currentThread().getId();
+                    long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+                    for (long i = 0; i < operations; i++) {
+                        String name = names.next(random);
+                        long begin = System.nanoTime();
+                        workload.request(name, builders);
+                        local.record(System.nanoTime() - begin);
+                    }
+                    if (allocations != null) {
+                        allocated.addAndGet(allocations.getThreadAllocatedBytes(threadId) - allocatedBefore);
+                    }
+                    synchronized (histogram) {
+                        histogram.add(local);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    barrier.reset();
+                }
+            }, "avatar-load-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start.get();
+        if (failure.get() != null) {
+            throw new IllegalStateException("Load driver failed", failure.get());
+        }
+        return new Result(operations * threads, elapsed, histogram, allocations == null ? -1 : allocated.get());
+    }
+
+    /**
+     * Creates the per-thread cache of builders used by {@link Workload#REBUILD}, bounded because each builder keeps its
+     * rendered layers.
+     */
+    private static Map<String, AvatarBuilder> newBuilderCache() {
+        return new LinkedHashMap<String, AvatarBuilder>(BUILDER_CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AvatarBuilder> eldest) {
+                return size() > BUILDER_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * What each request does with the name.
+     */
+    enum Workload {
+        /**
+         * The seeded constructor followed by {@link AvatarBuilder#build()}.
+         */
+        BUILD {
+            @Override
+            void request(String name, Map<String, AvatarBuilder> builders) {
+                new AvatarBuilder(name).build();
+            }
+        },
+        /**
+         * The seeded constructor followed by {@link AvatarRenderer#renderBytes(AvatarBuilder)}.
+         */
+        BYTES {
+            @Override
+            void request(String name, Map<String, AvatarBuilder> builders) {
+                AvatarRenderer.DEFAULT.renderBytes(new AvatarBuilder(name));
+            }
+        },
+        /**
+         * The seeded constructor followed by {@link AvatarBuilder#buildDataUri()}.
+         */
+        DATA_URI {
+            @Override
+            void request(String name, Map<String, AvatarBuilder> builders) {
+                new AvatarBuilder(name).buildDataUri();
+            }
+        },
+        /**
+         * Keeps the builders of the names most recently seen by the thread, so that repeat names reuse the layers that
+         * the builder has already rendered.
+         */
+        REBUILD {
+            @Override
+            void request(String name, Map<String, AvatarBuilder> builders) {
+                builders.computeIfAbsent(name, AvatarBuilder::new).build();
+            }
+        };
+
+        abstract void request(String name, Map<String, AvatarBuilder> builders);
+    }
+
+    /**
+     * A distribution of names: a Zipfian distribution over a population of returning users, mixed with first-time
+     * users.
+     */
+    static final class Names {
+        private static final AtomicLong FIRST_TIME = new AtomicLong();
+        private final double[] cumulative;
+        private final double newUsers;
+
+        /**
+         * @param population the number of returning users.
+         * @param exponent   the Zipf exponent, larger values concentrate more requests on the most popular names.
+         * @param newUsers   the fraction of requests from first-time users.
+         */
+        Names(int population, double exponent, double newUsers) {
+            if (population < 1) {
+                throw new IllegalArgumentException("population must be positive: " + population);
+            }
+            if (newUsers < 0 || newUsers > 1) {
+                throw new IllegalArgumentException("newUsers must be between 0 and 1: " + newUsers);
+            }
+            cumulative = new double[population];
+            double total = 0;
+            for (int rank = 0; rank < population; rank++) {
+                total += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < population; rank++) {
+                cumulative[rank] /= total;
+            }
+            this.newUsers = newUsers;
+        }
+
+        String next(SplittableRandom random) {
+            if (newUsers > 0 && random.nextDouble() < newUsers) {
+                return "new-" + FIRST_TIME.getAndIncrement();
+            }
+            return "user-" + rank(random.nextDouble());
+        }
+
+        /**
+         * Returns the zero based rank of the name at a point of the cumulative distribution.
+         */
+        int rank(double u) {
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A log-linear histogram of non-negative values, in the style of HdrHistogram: values are bucketed with a relative
+     * error of at most 1/{@value #SUB_BUCKETS}, across the whole range of {@code long}, in a fixed array of counters.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 6;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+        private long total;
+        private long max;
+
+        void record(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("value must not be negative: " + value);
+            }
+            counts[index(value)]++;
+            total++;
+            max = Math.max(max, value);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return total;
+        }
+
+        /**
+         * Returns the value at a percentile, i.e. the highest value of the bucket containing it, except for the 100th
+         * percentile which is the exact maximum.
+         *
+         * @param percentile the percentile, from 0 to 100.
+         * @return the value.
+         */
+        long valueAt(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            if (percentile >= 100) {
+                return max;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(max, highest(i));
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            // values below 2 * SUB_BUCKETS are exact, above that each power of two is split into SUB_BUCKETS
+            int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1);
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        private static long highest(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long base = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+            return base + (1L << shift) - 1;
+        }
+    }
+
+    static final class Result {
+        final long operations;
+        final long elapsedNanos;
+        final Histogram histogram;
+        /**
+         * The bytes allocated by the threads while recording, or {@code -1} if the JVM cannot measure it.
+         */
+        final long allocatedBytes;
+
+        Result(long operations, long elapsedNanos, Histogram histogram, long allocatedBytes) {
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.histogram = histogram;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double throughput() {
+            return operations / (elapsedNanos / 1e9);
+        }
+    }
+}
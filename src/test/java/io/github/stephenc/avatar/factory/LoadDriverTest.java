@@ -0,0 +1,69 @@
+package io.github.stephenc.avatar.factory;
+
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadDriverTest {
+    @Test
+    void given__recorded_values__when__percentiles_read__then__within_histogram_precision() {
+        // given
+        LoadDriver.Histogram histogram = new LoadDriver.Histogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+        histogram.record(Long.MAX_VALUE);
+
+        // then
+        assertEquals(1_000_001, histogram.count());
+        double precision = 1.0 / LoadDriver.Histogram.SUB_BUCKETS;
+        assertEquals(500_000, histogram.valueAt(50), 500_000 * precision);
+        assertEquals(990_000, histogram.valueAt(99), 990_000 * precision);
+        assertEquals(999_000, histogram.valueAt(99.9), 999_000 * precision);
+        assertEquals(1, histogram.valueAt(0));
+        assertEquals(Long.MAX_VALUE, histogram.valueAt(100));
+    }
+
+    @Test
+    void given__zipfian_names__when__sampled__then__popular_names_dominate() {
+        // given
+        LoadDriver.Names names = new LoadDriver.Names(1000, 1.0, 0.1);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // when
+        int top = 0;
+        int tail = 0;
+        int firstTime = 0;
+        for (int i = 0; i < 100_000; i++) {
+            String name = names.next(random);
+            if (name.equals("user-0")) {
+                top++;
+            } else if (name.equals("user-999")) {
+                tail++;
+            } else if (name.startsWith("new-")) {
+                firstTime++;
+            }
+        }
+
+        // then the most popular name is about 1000 times as frequent as the least popular name
+        assertTrue(top > 100 * Math.max(1, tail), top + " vs " + tail);
+        assertEquals(10_000, firstTime, 1_000);
+    }
+
+    @Test
+    void given__each_workload__when__run__then__every_request_recorded() throws InterruptedException {
+        for (LoadDriver.Workload workload : LoadDriver.Workload.values()) {
+            // when
+            LoadDriver.Result result = new LoadDriver(workload, new LoadDriver.Names(100, 1.1, 0.05), 2, 10, 100)
+                    .run();
+
+            // then
+            assertEquals(200, result.operations);
+            assertEquals(200, result.histogram.count());
+            assertTrue(result.histogram.valueAt(50) > 0);
+            assertTrue(result.throughput() > 0);
+        }
+    }
+}
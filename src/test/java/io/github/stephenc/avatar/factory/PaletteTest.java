@@ -0,0 +1,71 @@
+package io.github.stephenc.avatar.factory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaletteTest {
+    private static final Palette ACME = Palette.builder("PaletteTest-acme")
+            .add("Acme red", "#d0021b")
+            .add("Acme navy", "#0b1f44")
+            .add("Acme sand", "#f5e6c8")
+            .add("Acme teal", "#008080")
+            .add("Acme plum", "#5b2a4e")
+            .register();
+
+    @Test
+    void given__built_in_colors__then__swatches_map_back_to_the_enum() {
+        for (AvatarBuilder.Color color : AvatarBuilder.Color.values()) {
+            Palette.Swatch swatch = Palette.BUILT_IN.getColors().get(color.ordinal());
+            assertTrue(swatch.isBuiltIn());
+            assertSame(color, swatch.getColor());
+            assertSame(swatch, Palette.swatch(swatch.getIndex()));
+        }
+    }
+
+    @Test
+    void given__registered_palette__then__colors_found_by_name_and_index() {
+        assertSame(ACME, Palette.get("PaletteTest-acme"));
+        Palette.Swatch red = ACME.getColor("Acme red");
+        assertEquals("#d0021b", red.getHex());
+        assertSame(red, Palette.swatch(red.getIndex()));
+        assertFalse(red.isBuiltIn());
+        assertNull(red.getColor());
+        assertThrows(IllegalArgumentException.class,
+                () -> Palette.builder("PaletteTest-acme").add("Red", "#ff0000").register());
+        assertThrows(IllegalArgumentException.class, () -> Palette.builder("PaletteTest-bad").add("Red", "red"));
+    }
+
+    @Test
+    void given__theme__when__built__then__palette_colors_rendered() {
+        AvatarBuilder builder = new AvatarBuilder("Bob").theme(ACME);
+        String svg = builder.build();
+        assertSame(ACME, builder.getBackgroundSwatch().getPalette());
+        assertSame(ACME, builder.getClothesSwatch().getPalette());
+        assertNull(builder.getBackgroundColor());
+        assertNull(builder.getClothesColor());
+        assertNotEquals(builder.getClothesSwatch(), builder.getClothesSecondarySwatch());
+        assertTrue(svg.contains(builder.getBackgroundSwatch().getHex()));
+        assertTrue(svg.contains(builder.getClothesSwatch().getHex()));
+        assertEquals(svg, new AvatarBuilder("Bob").theme(ACME).build());
+        assertThrows(IllegalArgumentException.class, () -> AvatarIndex.rank(builder));
+    }
+
+    @Test
+    void given__palette_color__when__rendered__then__same_as_equivalent_built_in_color() {
+        Palette.Swatch concrete = Palette.builder("PaletteTest-concrete").add("Concrete", "#95a5a6").register()
+                .getColor("Concrete");
+        AvatarBuilder expected = new AvatarBuilder("Alice")
+                .clothes(AvatarBuilder.Clothes.FEMALE_B, AvatarBuilder.Color.CONCRETE, AvatarBuilder.Color.CONCRETE);
+        AvatarBuilder actual = new AvatarBuilder("Alice")
+                .clothes(AvatarBuilder.Clothes.FEMALE_B, null, null)
+                .clothesColor(concrete, concrete);
+        assertEquals(expected.build(), actual.build());
+    }
+}
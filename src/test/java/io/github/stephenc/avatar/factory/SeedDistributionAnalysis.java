@@ -0,0 +1,296 @@
+package io.github.stephenc.avatar.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+/**
+ * Measures how evenly the seeded {@link AvatarBuilder#AvatarBuilder(String)} constructor distributes each attribute.
+ * <p>
+ * Seeds are generated across all cores and counted into striped counters, then each attribute is compared with the
+ * uniform distribution using Pearson's chi-square test. Attributes whose options depend on the head template are
+ * tested separately for each head template. Run {@link #main(String[])} with the number of seeds to analyse, e.g.
+ * {@code 500000000}, to reach a statistical power that {@link AvatarBuilderTest} cannot.
+ */
+final class SeedDistributionAnalysis {
+    private static final AvatarBuilder.Head[] HEADS = AvatarBuilder.Head.values();
+    private static final int CHUNK = 1 << 14;
+    private static final List<Attribute> ATTRIBUTES = Collections.unmodifiableList(Arrays.asList(
+            new Attribute("head", AvatarBuilder::getHead, HEADS, false),
+            new Attribute("accessory", AvatarBuilder::getAccessory, AvatarBuilder.Accessory.values(), true),
+            new Attribute("accessoryColor", AvatarBuilder::getAccessoryColor, AvatarBuilder.Color.values(), false),
+            new Attribute("clothes", AvatarBuilder::getClothes, AvatarBuilder.Clothes.values(), true),
+            new Attribute("clothesColor", AvatarBuilder::getClothesColor, AvatarBuilder.Color.values(), false),
+            new Attribute("clothesSecondaryColor", AvatarBuilder::getClothesSecondaryColor,
+                    AvatarBuilder.Color.values(), false),
+            new Attribute("backgroundColor", AvatarBuilder::getBackgroundColor, AvatarBuilder.Color.values(), false),
+            new Attribute("backgroundSecondaryColor", AvatarBuilder::getBackgroundSecondaryColor,
+                    AvatarBuilder.Color.values(), false),
+            new Attribute("eyes", AvatarBuilder::getEyes, AvatarBuilder.Eyes.values(), false),
+            new Attribute("eyesColor", AvatarBuilder::getEyesColor, AvatarBuilder.EyesColor.values(), false),
+            new Attribute("glasses", AvatarBuilder::getGlasses, AvatarBuilder.Glasses.values(), true),
+            new Attribute("glassesColor", AvatarBuilder::getGlassesColor, AvatarBuilder.Color.values(), false),
+            new Attribute("facialHair", AvatarBuilder::getFacialHair, AvatarBuilder.FacialHair.values(), true),
+            new Attribute("facialHairColor", AvatarBuilder::getFacialHairColor, AvatarBuilder.HairColor.values(),
+                    false),
+            new Attribute("hair", AvatarBuilder::getHair, AvatarBuilder.Hair.values(), true),
+            new Attribute("hairColor", AvatarBuilder::getHairColor, AvatarBuilder.HairColor.values(), false),
+            new Attribute("mouth", AvatarBuilder::getMouth, AvatarBuilder.Mouth.values(), false),
+            new Attribute("mouthColor", AvatarBuilder::getMouthColor, AvatarBuilder.LipColor.values(), true),
+            new Attribute("skinColor", AvatarBuilder::getSkinColor, AvatarBuilder.SkinColor.values(), false),
+            new Attribute("noseColor", AvatarBuilder::getNoseColor, AvatarBuilder.SkinColor.values(), false)
+    ));
+
+    private final String prefix;
+    private final long seeds;
+    private final int parallelism;
+
+    /**
+     * @param prefix      the prefix of each seed, seeds are {@code prefix + i} for {@code i} in {@code [0, seeds)}.
+     * @param seeds       the number of seeds to analyse.
+     * @param parallelism the number of threads to use.
+     */
+    SeedDistributionAnalysis(String prefix, long seeds, int parallelism) {
+        this.prefix = prefix;
+        this.seeds = seeds;
+        this.parallelism = parallelism;
+    }
+
+    public static void main(String[] args) {
+        long seeds = args.length > 0 ? Long.parseLong(args[0].replace("_", "")) : 100_000_000L;
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String prefix = args.length > 2 ? args[2] : "seed-";
+        long start = System.nanoTime();
+        List<Result> results = new SeedDistributionAnalysis(prefix, seeds, parallelism).run();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "Analysed %,d seeds on %d threads in %.1fs (%,.0f seeds/s)%n",
+                seeds, parallelism, elapsed / 1e9, seeds / (elapsed / 1e9));
+        System.out.printf(Locale.ROOT, "%-26s %-8s %12s %4s %12s %10s%n",
+                "attribute", "head", "chi-square", "df", "p-value", "max dev");
+        for (Result result : results) {
+            System.out.printf(Locale.ROOT, "%-26s %-8s %12.2f %4d %12.4g %9.3f%%%n",
+                    result.attribute, result.head == null ? "*" : result.head, result.chiSquare,
+                    result.degreesOfFreedom, result.pValue, result.maxDeviation * 100);
+        }
+    }
+
+    /**
+     * Generates the seeds and tests each attribute.
+     *
+     * @return the chi-square results for each attribute, and for each head template where the options of the attribute
+     * depend on the head template.
+     */
+    List<Result> run() {
+        LongAdder[][][] counts = new LongAdder[ATTRIBUTES.size()][HEADS.length][];
+        for (int a = 0; a < counts.length; a++) {
+            for (int h = 0; h < HEADS.length; h++) {
+                counts[a][h] = new LongAdder[ATTRIBUTES.get(a).values.length];
+                for (int v = 0; v < counts[a][h].length; v++) {
+                    counts[a][h][v] = new LongAdder();
+                }
+            }
+        }
+        long chunks = (seeds + CHUNK - 1) / CHUNK;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> LongStream.range(0, chunks).parallel().forEach(chunk -> {
+                long end = Math.min(seeds, (chunk + 1) * CHUNK);
+                for (long i = chunk * CHUNK; i < end; i++) {
+                    AvatarBuilder avatar = new AvatarBuilder(prefix + i);
+                    int h = avatar.getHead().ordinal();
+                    for (int a = 0; a < counts.length; a++) {
+                        counts[a][h][ATTRIBUTES.get(a).getter.apply(avatar).ordinal()].increment();
+                    }
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        List<Result> results = new ArrayList<>();
+        for (int a = 0; a < counts.length; a++) {
+            Attribute attribute = ATTRIBUTES.get(a);
+            if (attribute.headDependent) {
+                for (AvatarBuilder.Head head : HEADS) {
+                    long[] observed = sum(counts[a], head.ordinal(), head.ordinal() + 1);
+                    List<? extends Enum<?>> matching = attribute.matching(head);
+                    long[] restricted = new long[matching.size()];
+                    for (int i = 0; i < restricted.length; i++) {
+                        restricted[i] = observed[matching.get(i).ordinal()];
+                    }
+                    results.add(Result.of(attribute.name, head, restricted));
+                }
+            } else {
+                results.add(Result.of(attribute.name, null, sum(counts[a], 0, HEADS.length)));
+            }
+        }
+        return results;
+    }
+
+    private static long[] sum(LongAdder[][] counts, int fromHead, int toHead) {
+        long[] result = new long[counts[0].length];
+        for (int h = fromHead; h < toHead; h++) {
+            for (int v = 0; v < result.length; v++) {
+                result[v] += counts[h][v].sum();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the probability of a chi-square statistic at least as large as the one observed, assuming the null
+     * hypothesis.
+     *
+     * @param chiSquare        the chi-square statistic.
+     * @param degreesOfFreedom the degrees of freedom.
+     * @return the p-value.
+     */
+    static double chiSquarePValue(double chiSquare, int degreesOfFreedom) {
+        if (degreesOfFreedom <= 0) {
+            return 1.0;
+        }
+        return regularizedGammaQ(degreesOfFreedom / 2.0, chiSquare / 2.0);
+    }
+
+    private static double regularizedGammaQ(double a, double x) {
+        if (x <= 0) {
+            return 1.0;
+        }
+        if (x < a + 1) {
+            // series representation of P(a, x)
+            double term = 1.0 / a;
+            double sum = term;
+            for (int n = 1; n < 10_000; n++) {
+                term *= x / (a + n);
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1e-15) {
+                    break;
+                }
+            }
+            return 1.0 - sum * Math.exp(-x + a * Math.log(x) - logGamma(a));
+        }
+        // continued fraction representation of Q(a, x), evaluated with the modified Lentz method
+        double tiny = 1e-300;
+        double b = x + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int n = 1; n < 10_000; n++) {
+            double an = -n * (n - a);
+            b += 2;
+            d = an * d + b;
+            if (Math.abs(d) < tiny) {
+                d = tiny;
+            }
+            c = b + an / c;
+            if (Math.abs(c) < tiny) {
+                c = tiny;
+            }
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.exp(-x + a * Math.log(x) - logGamma(a)) * h;
+    }
+
+    private static double logGamma(double x) {
+        // Lanczos approximation, g = 7, n = 9
+        double[] coefficients = {
+                0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7
+        };
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        x -= 1;
+        double sum = coefficients[0];
+        for (int i = 1; i < coefficients.length; i++) {
+            sum += coefficients[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+    private static final class Attribute {
+        private final String name;
+        private final Function<AvatarBuilder, Enum<?>> getter;
+        private final Enum<?>[] values;
+        private final boolean headDependent;
+
+        Attribute(String name, Function<AvatarBuilder, Enum<?>> getter, Enum<?>[] values, boolean headDependent) {
+            this.name = name;
+            this.getter = getter;
+            this.values = values;
+            this.headDependent = headDependent;
+        }
+
+        List<? extends Enum<?>> matching(AvatarBuilder.Head head) {
+            AvatarBuilder template =
+                    new AvatarBuilder("", head, AvatarBuilder.SkinColor.TAN, AvatarBuilder.SkinColor.TAN);
+            switch (name) {
+                case "accessory":
+                    return template.matchingAccessories();
+                case "clothes":
+                    return template.matchingClothes();
+                case "glasses":
+                    return template.matchingGlasses();
+                case "facialHair":
+                    return template.matchingFacialHair();
+                case "hair":
+                    return template.matchingHair();
+                case "mouthColor":
+                    return template.matchingLipColor();
+                default:
+                    throw new IllegalStateException("No matching options for " + name);
+            }
+        }
+    }
+
+    static final class Result {
+        final String attribute;
+        final AvatarBuilder.Head head;
+        final long[] observed;
+        final double chiSquare;
+        final int degreesOfFreedom;
+        final double pValue;
+        final double maxDeviation;
+
+        private Result(String attribute, AvatarBuilder.Head head, long[] observed, double chiSquare,
+                       int degreesOfFreedom, double pValue, double maxDeviation) {
+            this.attribute = attribute;
+            this.head = head;
+            this.observed = observed;
+            this.chiSquare = chiSquare;
+            this.degreesOfFreedom = degreesOfFreedom;
+            this.pValue = pValue;
+            this.maxDeviation = maxDeviation;
+        }
+
+        static Result of(String attribute, AvatarBuilder.Head head, long[] observed) {
+            long total = 0;
+            for (long count : observed) {
+                total += count;
+            }
+            double expected = (double) total / observed.length;
+            double chiSquare = 0;
+            double maxDeviation = 0;
+            for (long count : observed) {
+                double difference = count - expected;
+                chiSquare += expected == 0 ? 0 : difference * difference / expected;
+                maxDeviation = Math.max(maxDeviation, expected == 0 ? 0 : Math.abs(difference) / expected);
+            }
+            int degreesOfFreedom = observed.length - 1;
+            return new Result(attribute, head, observed, chiSquare, degreesOfFreedom,
+                    chiSquarePValue(chiSquare, degreesOfFreedom), maxDeviation);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.stephenc.avatar.factory;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SeedDistributionAnalysisTest {
+    @Test
+    void given__known_statistics__then__p_values_match_tables() {
+        assertEquals(0.05, SeedDistributionAnalysis.chiSquarePValue(3.841, 1), 1e-4);
+        assertEquals(0.05, SeedDistributionAnalysis.chiSquarePValue(33.924, 22), 1e-4);
+        assertEquals(0.001, SeedDistributionAnalysis.chiSquarePValue(20.515, 5), 1e-5);
+        assertEquals(0.5, SeedDistributionAnalysis.chiSquarePValue(1.386, 2), 1e-3);
+        assertEquals(1.0, SeedDistributionAnalysis.chiSquarePValue(0, 3), 0);
+    }
+
+    @Test
+    void given__seeds__when__analysed__then__every_seed_counted_for_every_attribute() {
+        // given
+        long seeds = 20_000;
+
+        // when
+        List<SeedDistributionAnalysis.Result> results = new SeedDistributionAnalysis("seed-", seeds, 4).run();
+
+        // then
+        long[] perHead = new long[AvatarBuilder.Head.values().length];
+        for (SeedDistributionAnalysis.Result result : results) {
+            long total = 0;
+            for (long count : result.observed) {
+                total += count;
+            }
+            if (result.head == null) {
+                assertEquals(seeds, total, result.attribute);
+            } else if (result.attribute.equals("hair")) {
+                perHead[result.head.ordinal()] = total;
+            }
+        }
+        assertEquals(seeds, perHead[0] + perHead[1]);
+    }
+}
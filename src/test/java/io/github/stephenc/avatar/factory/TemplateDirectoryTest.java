@@ -0,0 +1,91 @@
+package io.github.stephenc.avatar.factory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateDirectoryTest {
+    private static final String NOSE = "<g id=\"custom-nose\"><path fill=\"{{color}}\"></path></g>";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void given__empty_directory__when__rendered__then__same_as_bundled_templates() throws IOException {
+        try (TemplateDirectory directory = TemplateDirectory.open(root)) {
+            AvatarBuilder avatar = new AvatarBuilder("Bob");
+            assertEquals(AvatarRenderer.DEFAULT.render(avatar), directory.getRenderer().render(avatar));
+        }
+    }
+
+    @Test
+    void given__directory__when__reloaded__then__overrides_used() throws IOException {
+        // given
+        Path common = Files.createDirectories(root.resolve("common"));
+        try (TemplateDirectory directory = TemplateDirectory.open(root)) {
+            AvatarBuilder avatar = new AvatarBuilder("Bob");
+            String before = directory.getRenderer().render(avatar);
+            Files.write(common.resolve("Nose.svg.hbs"), NOSE.getBytes(StandardCharsets.UTF_8));
+
+            // when
+            directory.reload();
+
+            // then
+            String after = directory.getRenderer().render(avatar);
+            assertFalse(before.contains("custom-nose"));
+            assertTrue(after.contains("<g id=\"custom-nose\"><path fill=\"#"));
+        }
+    }
+
+    @Test
+    void given__watched_directory__when__template_changed__then__swapped_in() throws Exception {
+        try (TemplateDirectory directory = TemplateDirectory.open(root)) {
+            AvatarBuilder avatar = new AvatarBuilder("Alice");
+            String original = directory.getRenderer().render(avatar);
+
+            // a new sub-directory and template
+            Path common = Files.createDirectories(root.resolve("common"));
+            Files.write(common.resolve("Nose.svg.hbs"), NOSE.getBytes(StandardCharsets.UTF_8));
+            awaitRender(directory, avatar, svg -> svg.contains("custom-nose"));
+
+            // a deleted template falls back to the bundled template
+            Files.delete(common.resolve("Nose.svg.hbs"));
+            awaitRender(directory, avatar, original::equals);
+        }
+    }
+
+    @Test
+    void given__template_set__when__template_replaced__then__unchanged_low_detail_templates_reused() {
+        // given
+        TemplateSet original = TemplateSet.classpath();
+
+        // when
+        TemplateSet replaced = original.with(Collections.singletonMap(TemplateSet.NOSE, Template.compile(NOSE)));
+
+        // then
+        assertSame(original.lowDetail().avatar, replaced.lowDetail().avatar);
+        assertSame(original.lowDetail().heads[0], replaced.lowDetail().heads[0]);
+        assertNotSame(original.lowDetail().nose, replaced.lowDetail().nose);
+        assertSame(replaced.lowDetail(), replaced.lowDetail().lowDetail());
+    }
+
+    private static void awaitRender(TemplateDirectory directory, AvatarBuilder avatar, Predicate<String> condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (!condition.test(directory.getRenderer().render(avatar))) {
+            assertTrue(System.nanoTime() < deadline, "template change not picked up");
+            Thread.sleep(20);
+        }
+    }
+}